@@ -0,0 +1,403 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLStreamException;
+
+/**
+* <h1>BatchConverter</h1>
+* Class for converting, validating and rendering thumbnails of every drawing in a
+* directory without a user interface, for example the xml directory of the server.
+* The drawings pass through a pipeline of three stages connected by bounded
+* queues, each stage running on its own threads: the files are parsed, then the
+* shapes are validated and a thumbnail is rendered, and last the converted
+* drawing, the thumbnail and a line of the report are written. Progress is
+* printed every second, and the throughput when all drawings are done.
+* <p>
+* Shapes are invalid if their color is not on the form #rrggbb or if they lack
+* points. Drawings with invalid shapes are converted but not rendered.
+* <p>
+* Usage: BatchConverter [input directory] [output directory] [xml|jpb|none]
+* [thumbnail size, 0 for none] [threads per stage]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class BatchConverter {
+	public static final String FORMAT_XML = "xml";
+	public static final String FORMAT_BINARY = "jpb";
+	public static final String FORMAT_NONE = "none";
+	public static final String REPORT_FILE = "report.csv";
+
+	// drawings reaching further are cut off in the thumbnail
+	private static final int MAX_RENDER_SIZE = 4096;
+	// passed through a queue after the last drawing
+	private static final Job END = new Job(null);
+
+	private final Path input;
+	private final Path output;
+	private final String format;
+	private final int thumbnailSize;
+	private final int threads;
+	private final TileRenderer renderer = new TileRenderer();
+
+	private final AtomicInteger done = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicInteger invalid = new AtomicInteger();
+	private final AtomicLong shapes = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private PrintWriter report;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		String input = args.length > 0 ? args[0] : "xml";
+		String output = args.length > 1 ? args[1] : "export";
+		String format = args.length > 2 ? args[2] : FORMAT_BINARY;
+		int thumbnailSize = 128;
+		int threads = Runtime.getRuntime().availableProcessors();
+		try {
+			if(args.length > 3) {
+				thumbnailSize = Integer.parseInt(args[3]);
+			}
+			if(args.length > 4) {
+				threads = Integer.parseInt(args[4]);
+			}
+		} catch(NumberFormatException e) {
+			System.out.println("Invalid number argument: " + e.getMessage());
+			return;
+		}
+		if(!format.equals(FORMAT_XML) && !format.equals(FORMAT_BINARY) && !format.equals(FORMAT_NONE)) {
+			System.out.println("Invalid format " + format + ", use xml, jpb or none");
+			return;
+		}
+
+		try {
+			new BatchConverter(Paths.get(input), Paths.get(output), format, thumbnailSize, Math.max(1, threads)).run();
+		} catch(IOException | InterruptedException e) {
+			System.out.println("Error in BatchConverter: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param input, the directory holding the drawings
+	 * @param output, the directory to write the results to
+	 * @param format, the format to convert to, or FORMAT_NONE to only validate
+	 * @param thumbnailSize, the largest width and height of the thumbnails, 0 for none
+	 * @param threads, the number of threads of every stage
+	 */
+	public BatchConverter(Path input, Path output, String format, int thumbnailSize, int threads) {
+		this.input = input;
+		this.output = output;
+		this.format = format;
+		this.thumbnailSize = thumbnailSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * Method for processing every drawing in the input directory
+	 * @throws IOException if the directories could not be read or the report written
+	 * @throws InterruptedException if interrupted while waiting for the pipeline
+	 */
+	public void run() throws IOException, InterruptedException {
+		List<Path> files;
+		try(Stream<Path> list = Files.list(input)) {
+			files = list.filter(path -> {
+				String name = path.getFileName().toString();
+				return name.endsWith(".xml") || name.endsWith(BinaryDrawing.EXTENSION);
+			}).sorted().collect(Collectors.toList());
+		}
+		Files.createDirectories(output);
+
+		// small queues keep only a few drawings in memory at a time
+		BlockingQueue<Job> pending = new ArrayBlockingQueue<Job>(threads * 2);
+		BlockingQueue<Job> parsed = new ArrayBlockingQueue<Job>(threads * 2);
+		BlockingQueue<Job> rendered = new ArrayBlockingQueue<Job>(threads * 2);
+		BlockingQueue<Job> written = new ArrayBlockingQueue<Job>(threads * 2);
+
+		long start = System.nanoTime();
+		try(PrintWriter reportWriter = new PrintWriter(Files.newBufferedWriter(output.resolve(REPORT_FILE)))) {
+			report = reportWriter;
+			report.println("file,status,shapes,invalid shapes,circumference,area,message");
+
+			startStage("parse", pending, parsed, this::parse);
+			startStage("render", parsed, rendered, this::render);
+			startStage("write", rendered, written, this::write);
+
+			Thread feeder = new Thread(() -> {
+				try {
+					for(Path file : files) {
+						pending.put(new Job(file));
+					}
+					pending.put(END);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "BatchConverter-list");
+			feeder.setDaemon(true);
+			feeder.start();
+
+			// print the progress every second until the last stage has finished
+			long reported = start;
+			while(written.poll(1, TimeUnit.SECONDS) != END) {
+				long now = System.nanoTime();
+				if(now - reported >= TimeUnit.SECONDS.toNanos(1)) {
+					reported = now;
+					System.out.printf("%d/%d drawings, %.1f drawings/s%n", done.get(), files.size(),
+									  done.get() / ((now - start) / 1e9));
+				}
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Processed %d drawings (%d failed, %d with invalid shapes) in %.2f s%n",
+						  done.get(), failed.get(), invalid.get(), seconds);
+		System.out.printf("%.1f drawings/s, %.0f shapes/s, %.2f MB/s read%n", done.get() / seconds,
+						  shapes.get() / seconds, bytes.get() / 1e6 / seconds);
+	}
+
+	/**
+	 * Method for starting the threads of a stage of the pipeline. When the end
+	 * is taken from the input queue it is put back for the other threads, and the
+	 * last thread to finish passes it on to the output queue.
+	 * @param name, the name of the stage
+	 * @param in, the queue to take drawings from
+	 * @param out, the queue to put processed drawings into
+	 * @param stage, the processing of a drawing
+	 */
+	private void startStage(String name, BlockingQueue<Job> in, BlockingQueue<Job> out, UnaryOperator<Job> stage) {
+		AtomicInteger running = new AtomicInteger(threads);
+		for(int i = 0; i < threads; ++i) {
+			Thread thread = new Thread(() -> {
+				try {
+					Job job;
+					while((job = in.take()) != END) {
+						try {
+							job = stage.apply(job);
+						} catch(RuntimeException e) {
+							// pass the drawing on as failed rather than stopping the pipeline
+							job.drawing = null;
+							job.message = name + " failed: " + e;
+						}
+						out.put(job);
+					}
+					in.put(END);
+					if(running.decrementAndGet() == 0) {
+						out.put(END);
+					}
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, "BatchConverter-" + name + "-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Method for reading a drawing, in either format
+	 * @param job, the drawing to read
+	 * @return the job holding the drawing or the error
+	 */
+	private Job parse(Job job) {
+		Drawing drawing = new Drawing();
+		try(InputStream in = new BufferedInputStream(Files.newInputStream(job.file), 64 * 1024)) {
+			if(BinaryDrawing.isBinary(in)) {
+				BinaryDrawing.read(in, drawing);
+			} else {
+				DrawingReader.read(in, drawing);
+			}
+			job.drawing = drawing;
+			bytes.addAndGet(Files.size(job.file));
+		} catch(IOException | XMLStreamException | RuntimeException e) {
+			job.message = "not read: " + e.getMessage();
+		}
+		return job;
+	}
+
+	/**
+	 * Method for validating the shapes of a drawing and rendering its thumbnail
+	 * @param job, the drawing to process
+	 * @return the job holding the results
+	 */
+	private Job render(Job job) {
+		if(job.drawing == null) {
+			return job;
+		}
+
+		job.drawing.forEachShape(shape -> {
+			if(!isValid(shape)) {
+				++job.invalidShapes;
+			}
+		});
+		job.circumference = job.drawing.getTotalCircumference();
+		job.area = job.drawing.getTotalArea();
+
+		if(thumbnailSize > 0 && job.invalidShapes == 0) {
+			try {
+				job.thumbnail = createThumbnail(job.drawing);
+			} catch(RuntimeException e) {
+				job.message = "not rendered: " + e.getMessage();
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Method for writing the converted drawing, the thumbnail and the report line
+	 * @param job, the processed drawing
+	 * @return the job
+	 */
+	private Job write(Job job) {
+		String name = job.file.getFileName().toString();
+		String baseName = name.substring(0, name.lastIndexOf('.'));
+
+		if(job.drawing != null) {
+			try {
+				if(!format.equals(FORMAT_NONE)) {
+					Path converted = output.resolve(baseName + "." + format);
+					try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(converted), 64 * 1024)) {
+						if(format.equals(FORMAT_BINARY)) {
+							BinaryDrawing.write(job.drawing, out);
+						} else {
+							DrawingWriter.write(job.drawing, out);
+						}
+					}
+				}
+				if(job.thumbnail != null && !ImageIO.write(job.thumbnail, "png", output.resolve(baseName + ".png").toFile())) {
+					throw new IOException("no PNG writer available");
+				}
+			} catch(IOException | RuntimeException e) {
+				job.message = "not written: " + e.getMessage();
+			}
+		}
+
+		String status;
+		if(job.drawing == null) {
+			status = "failed";
+			failed.incrementAndGet();
+		} else if(job.invalidShapes > 0) {
+			status = "invalid";
+			invalid.incrementAndGet();
+		} else {
+			status = job.message == null ? "ok" : "failed";
+			if(job.message != null) {
+				failed.incrementAndGet();
+			}
+		}
+		if(job.drawing != null) {
+			shapes.addAndGet(job.drawing.getSize());
+		}
+
+		synchronized(report) {
+			report.printf(java.util.Locale.ROOT, "%s,%s,%d,%d,%.2f,%.2f,%s%n", quote(name), status,
+						  job.drawing == null ? 0 : job.drawing.getSize(), job.invalidShapes,
+						  job.circumference, job.area, quote(job.message == null ? "" : job.message));
+		}
+		done.incrementAndGet();
+		// let the drawing be collected while the job waits in the last queue
+		job.drawing = null;
+		job.thumbnail = null;
+		return job;
+	}
+
+	/**
+	 * Method for rendering a drawing and scaling it down to a thumbnail
+	 * @param drawing, the drawing to render
+	 * @return the thumbnail
+	 */
+	private BufferedImage createThumbnail(Drawing drawing) {
+		java.awt.Dimension extent = TileRenderer.getExtent(drawing);
+		int width = Math.min(extent.width, MAX_RENDER_SIZE);
+		int height = Math.min(extent.height, MAX_RENDER_SIZE);
+		BufferedImage image = renderer.render(drawing, width, height, Color.WHITE);
+
+		double scale = Math.min(1.0, (double)thumbnailSize / Math.max(width, height));
+		int thumbnailWidth = Math.max(1, (int)Math.round(width * scale));
+		int thumbnailHeight = Math.max(1, (int)Math.round(height * scale));
+		BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = thumbnail.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.drawImage(image, 0, 0, thumbnailWidth, thumbnailHeight, null);
+		g.dispose();
+		return thumbnail;
+	}
+
+	/**
+	 * Method for checking if a shape can be drawn
+	 * @param shape, the shape
+	 * @return true if the color is valid and the shape has its points
+	 */
+	private static boolean isValid(Shape shape) {
+		if(ColorCache.get(shape.getColor()) == null) {
+			return false;
+		}
+		return shape.isComplete();
+	}
+
+	/**
+	 * Method for quoting a value of the report, on a single line
+	 * @param value, the value
+	 * @return the value, quoted if needed
+	 */
+	private static String quote(String value) {
+		value = value.replace('\n', ' ');
+		if(value.contains(",") || value.contains("\"")) {
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+
+	/**
+	* <h2>Job</h2>
+	* Class holding a drawing and the results of processing it as it passes
+	* through the pipeline
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	private static class Job {
+		private final Path file;
+		private Drawing drawing;
+		private BufferedImage thumbnail;
+		private int invalidShapes;
+		private double circumference;
+		private double area;
+		// why the drawing failed, or null
+		private String message;
+
+		/**
+		 * Constructor
+		 * @param file, the file of the drawing
+		 */
+		Job(Path file) {
+			this.file = file;
+		}
+	}
+}
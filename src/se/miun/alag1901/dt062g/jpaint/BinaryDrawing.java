@@ -0,0 +1,366 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+* <h1>BinaryDrawing</h1>
+* Class for reading and writing drawings in the compact binary .jpb format.
+* A file starts with a header holding the magic bytes "JPB", a format version,
+* the name and author of the drawing and its number of shapes. Every shape is
+* written as a type tag, a color and its points. Colors are written the first
+* time they are used and are referred to by their index in the palette after that.
+* Points with integer coordinates, which is what the drawing panel creates, are
+* written as variable length differences from the previous point, other points
+* as two doubles. Strokes are followed by their width as a float, they were
+* added in version 2 of the format. Reading and writing is lossless.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.3
+* @since   2026-10-18
+*/
+public class BinaryDrawing {
+	public static final String EXTENSION = ".jpb";
+	public static final int MAGIC = 0x4A504200;		// "JPB\0"
+	public static final int VERSION = 2;
+
+	// the type tag of a shape is its index in this array
+	private static final String[] TYPES = { null, "circle", "rectangle", "stroke" };
+	// set in the type tag of shapes whose points are written as integers
+	private static final int INT_POINTS = 0x80;
+
+	/**
+	 * Method for checking if a stream holds a binary drawing, the stream is reset
+	 * to where it was
+	 * @param in, a stream supporting mark
+	 * @return true if the stream starts with the magic bytes
+	 * @throws IOException
+	 */
+	public static boolean isBinary(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			int magic = 0;
+			for(int i = 0; i < 4; ++i) {
+				int b = in.read();
+				if(b < 0) {
+					return false;
+				}
+				magic = (magic << 8) | b;
+			}
+			return magic == MAGIC;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Method for writing a whole drawing to a stream
+	 * @param drawing, the drawing to write
+	 * @param out, the stream to write to, flushed but not closed
+	 * @throws IOException
+	 */
+	public static void write(Drawing drawing, OutputStream out) throws IOException {
+		write(drawing.getName(), drawing.getAuthor(), drawing.getShapes(), out);
+	}
+
+	/**
+	 * Method for writing a drawing to a stream
+	 * @param name, the name of the drawing
+	 * @param author, the author of the drawing
+	 * @param shapes, the shapes of the drawing
+	 * @param out, the stream to write to, flushed but not closed
+	 * @throws IOException
+	 */
+	public static void write(String name, String author, Collection<Shape> shapes,
+			OutputStream out) throws IOException {
+		write(name, author, shapes, out, null);
+	}
+
+	/**
+	 * Method for writing a drawing to a stream, telling how far it has come
+	 * @param name, the name of the drawing
+	 * @param author, the author of the drawing
+	 * @param shapes, the shapes of the drawing
+	 * @param out, the stream to write to, flushed but not closed
+	 * @param progress, called with the number of shapes written after every shape, or null
+	 * @throws IOException
+	 */
+	public static void write(String name, String author, Collection<Shape> shapes,
+			OutputStream out, IntConsumer progress) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeUTF(name == null ? "" : name);
+		data.writeUTF(author == null ? "" : author);
+		data.writeInt(shapes.size());
+
+		Map<String, Integer> palette = new HashMap<String, Integer>();
+		long[] previous = new long[2];
+		int written = 0;
+
+		if(shapes instanceof ShapeStore) {
+			// avoid creating a copy of every compactly stored shape
+			ShapeStore store = (ShapeStore)shapes;
+			Shape[] views = store.createViews();
+			while(written < store.size()) {
+				writeShape(data, store.view(written, views), palette, previous);
+				++written;
+				if(progress != null) {
+					progress.accept(written);
+				}
+			}
+		} else {
+			for(Shape shape : shapes) {
+				writeShape(data, shape, palette, previous);
+				++written;
+				if(progress != null) {
+					progress.accept(written);
+				}
+			}
+		}
+		if(written != shapes.size()) {
+			throw new IOException("drawing changed while being written");
+		}
+		data.flush();
+	}
+
+	/**
+	 * Method for writing one shape
+	 * @param data, the stream to write to
+	 * @param shape, the shape
+	 * @param palette, the indexes of the colors written so far, updated
+	 * @param previous, the previous x and y coordinates, updated
+	 * @throws IOException
+	 */
+	private static void writeShape(DataOutputStream data, Shape shape, Map<String, Integer> palette,
+			long[] previous) throws IOException {
+		int points = shape.getPointCount();
+		boolean intPoints = true;
+		for(int p = 0; p < points; ++p) {
+			intPoints &= isInt(shape.getPointX(p)) && isInt(shape.getPointY(p));
+		}
+		data.writeByte(tagOf(shape) | (intPoints ? INT_POINTS : 0));
+
+		// a new color is written after the next free index of the palette
+		String color = shape.getColor() == null ? "" : shape.getColor();
+		Integer index = palette.get(color);
+		if(index == null) {
+			writeVarLong(data, palette.size());
+			data.writeUTF(color);
+			palette.put(color, palette.size());
+		} else {
+			writeVarLong(data, index);
+		}
+
+		writeVarLong(data, points);
+		for(int p = 0; p < points; ++p) {
+			if(intPoints) {
+				writeDelta(data, (long)shape.getPointX(p), previous, 0);
+				writeDelta(data, (long)shape.getPointY(p), previous, 1);
+			} else {
+				data.writeDouble(shape.getPointX(p));
+				data.writeDouble(shape.getPointY(p));
+			}
+		}
+		if(shape instanceof Stroke) {
+			data.writeFloat((float)((Stroke)shape).getWidth());
+		}
+	}
+
+	/**
+	 * Method for reading the header of a binary drawing
+	 * @param in, the stream to read from, positioned at the magic bytes
+	 * @param sink, the sink receiving the name and author of the drawing
+	 * @return the number of shapes that follow the header
+	 * @throws IOException if the stream does not hold a supported binary drawing
+	 */
+	public static int readHeader(DataInputStream in, DrawingSink sink) throws IOException {
+		if(in.readInt() != MAGIC) {
+			throw new IOException("not a binary drawing");
+		}
+		int version = in.readUnsignedByte();
+		if(version > VERSION) {
+			throw new IOException("unsupported binary drawing version " + version);
+		}
+
+		sink.setName(in.readUTF());
+		sink.setAuthor(in.readUTF());
+		int count = in.readInt();
+		if(count < 0) {
+			throw new IOException("invalid number of shapes " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Method for reading a drawing from a stream, every shape is passed to the
+	 * sink as soon as it has been read
+	 * @param in, the stream to read from, not closed
+	 * @param sink, the sink receiving the parts of the drawing
+	 * @throws IOException if the stream does not hold a supported binary drawing
+	 */
+	public static void read(InputStream in, DrawingSink sink) throws IOException {
+		DataInputStream data = new DataInputStream(in instanceof BufferedInputStream ? in
+				: new BufferedInputStream(in, 64 * 1024));
+		int count = readHeader(data, sink);
+
+		String[] palette = new String[16];
+		int paletteSize = 0;
+		long[] previous = new long[2];
+
+		for(int i = 0; i < count; ++i) {
+			int tag = data.readUnsignedByte();
+			boolean intPoints = (tag & INT_POINTS) != 0;
+			Shape shape = DrawingReader.createShape(typeOf(tag & ~INT_POINTS));
+			if(shape == null) {
+				// the length of an unknown shape is unknown as well
+				throw new IOException("unknown shape type " + (tag & ~INT_POINTS));
+			}
+
+			int index = readVarInt(data);
+			if(index == paletteSize) {
+				if(paletteSize == palette.length) {
+					palette = Arrays.copyOf(palette, paletteSize * 2);
+				}
+				palette[paletteSize++] = data.readUTF();
+			} else if(index > paletteSize) {
+				throw new IOException("invalid color index " + index);
+			}
+			shape.setColor(palette[index]);
+
+			int points = readVarInt(data);
+			for(int p = 0; p < points; ++p) {
+				if(intPoints) {
+					double x = readDelta(data, previous, 0);
+					double y = readDelta(data, previous, 1);
+					shape.appendPoint(x, y);
+				} else {
+					shape.appendPoint(data.readDouble(), data.readDouble());
+				}
+			}
+			if(shape instanceof Stroke) {
+				((Stroke)shape).setWidth(data.readFloat());
+			}
+			sink.addShape(shape);
+		}
+	}
+
+	/**
+	 * Method for getting the type tag of a shape
+	 * @param shape, the shape
+	 * @return the tag
+	 * @throws IOException if the shape cannot be written in the binary format
+	 */
+	private static int tagOf(Shape shape) throws IOException {
+		String type = DrawingWriter.typeOf(shape);
+		for(int tag = 1; tag < TYPES.length; ++tag) {
+			if(TYPES[tag].equals(type)) {
+				return tag;
+			}
+		}
+		throw new IOException("unsupported shape type " + type);
+	}
+
+	/**
+	 * Method for getting the type of a shape from its tag
+	 * @param tag, the tag without flags
+	 * @return the type as written in XML, or null if unknown
+	 */
+	private static String typeOf(int tag) {
+		return tag > 0 && tag < TYPES.length ? TYPES[tag] : null;
+	}
+
+	/**
+	 * Method for checking if a coordinate can be written as an integer without loss
+	 * @param value, the coordinate
+	 * @return true if the value is an int, and not negative zero
+	 */
+	private static boolean isInt(double value) {
+		return Double.doubleToRawLongBits((int)value) == Double.doubleToRawLongBits(value);
+	}
+
+	/**
+	 * Method for writing an integer coordinate as the difference from the previous one
+	 * @param out, the stream to write to
+	 * @param value, the coordinate
+	 * @param previous, the previous x and y coordinates, updated
+	 * @param axis, 0 for x and 1 for y
+	 * @throws IOException
+	 */
+	private static void writeDelta(DataOutputStream out, long value, long[] previous, int axis) throws IOException {
+		long delta = value - previous[axis];
+		previous[axis] = value;
+		// zigzag encoding keeps small negative differences short
+		writeVarLong(out, (delta << 1) ^ (delta >> 63));
+	}
+
+	/**
+	 * Method for reading a coordinate written by writeDelta
+	 * @param in, the stream to read from
+	 * @param previous, the previous x and y coordinates, updated
+	 * @param axis, 0 for x and 1 for y
+	 * @return the coordinate
+	 * @throws IOException
+	 */
+	private static double readDelta(DataInputStream in, long[] previous, int axis) throws IOException {
+		long zigzag = readVarLong(in);
+		previous[axis] += (zigzag >>> 1) ^ -(zigzag & 1);
+		return previous[axis];
+	}
+
+	/**
+	 * Method for writing a non-negative number using seven bits per byte
+	 * @param out, the stream to write to
+	 * @param value, the number
+	 * @throws IOException
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			out.writeByte((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Method for reading a number written by writeVarLong
+	 * @param in, the stream to read from
+	 * @return the number
+	 * @throws IOException
+	 */
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed number");
+	}
+
+	/**
+	 * Method for reading a count or index written by writeVarLong
+	 * @param in, the stream to read from
+	 * @return the number
+	 * @throws IOException if the number does not fit in an int
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException {
+		long value = readVarLong(in);
+		if(value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("malformed number");
+		}
+		return (int)value;
+	}
+}
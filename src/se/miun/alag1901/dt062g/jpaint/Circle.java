@@ -1,6 +1,5 @@
 package se.miun.alag1901.dt062g.jpaint;
 
-import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -13,7 +12,7 @@ import javax.xml.bind.annotation.XmlTransient;
 * Class representing a circle shape.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.4
+* @version 1.8
 * @since   2020-12-20
 */
 @XmlRootElement
@@ -71,11 +70,32 @@ public class Circle extends Shape {
 		Graphics2D g2 = (Graphics2D)g;
 		// enable antialiasing
 		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.setPaint(Color.decode("0x" + this.color.substring(1)));
+		g2.setPaint(this.getPaint());
 		g2.drawOval(xOrigin, yOrigin, width, width);
 		g2.fillOval(xOrigin, yOrigin, width, width);
 	}
 
+	@Override
+	boolean isAntialiased() {
+		return true;
+	}
+
+	@Override
+	public java.awt.Rectangle getBounds() {
+		// the same corner and width as draw uses
+		int xOrigin = 0, yOrigin = 0, width = 0;
+		if(isComplete()) {
+			double radius = Math.sqrt(getRadiusSquared());
+			xOrigin = (int)(getPointX(0) - radius);
+			yOrigin = (int)(getPointY(0) - radius);
+			width = (int)(radius * 2);
+		}
+		// otherwise drawn at the origin
+		
+		// the outline reaches one pixel outside the oval, plus antialiasing
+		return new java.awt.Rectangle(xOrigin - 1, yOrigin - 1, width + 3, width + 3);
+	}
+
 	/**
 	 * Method for getting the radius of circle
 	 * @return the radius
@@ -83,13 +103,23 @@ public class Circle extends Shape {
 	 */
 	public double getRadius() throws UninitializedPointException {
 		// return radius, or throw UninitializedPointException if operation cannot be performed
-		try {
-			// use pythagorean theorem to get radius using the points
-			return Math.sqrt(Math.pow(Math.abs(points.get(0).getX() - points.get(1).getX()), 2)
-							 + Math.pow(Math.abs(points.get(0).getY() - points.get(1).getY()), 2));
-		} catch(Exception e) {
+		if(!isComplete()) {
 			throw new UninitializedPointException("error in Circle.getRadius()");
 		}
+		return Math.sqrt(getRadiusSquared());
+	}
+
+	/**
+	 * Method for getting the radius of circle squared, which needs no square root
+	 * @return the squared radius, or NaN if the circle has a single point
+	 */
+	private double getRadiusSquared() {
+		if(!isComplete()) {
+			return Double.NaN;
+		}
+		// use pythagorean theorem to get radius using the points
+		double dx = getPointX(0) - getPointX(1), dy = getPointY(0) - getPointY(1);
+		return dx * dx + dy * dy;
 	}
 
 	@Override
@@ -106,13 +136,24 @@ public class Circle extends Shape {
 	@Override
 	public double getArea() throws UninitializedPointException {
 		try {
-			return Math.pow(this.getRadius(), 2) * PI;
+			double radius = this.getRadius();
+			return radius * radius * PI;
 		} catch(UninitializedPointException e) {
 			String message = "error in Circle.getArea, from: ";
 			throw new UninitializedPointException(message + e.getMessage());
 		}
 	}
 
+	@Override
+	public double getCircumferenceOrNaN() {
+		return Math.sqrt(getRadiusSquared()) * 2 * PI;
+	}
+
+	@Override
+	public double getAreaOrNaN() {
+		return getRadiusSquared() * PI;
+	}
+
 	@Override
 	public String toString() {
 		try {
@@ -0,0 +1,57 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* <h1>ColorCache</h1>
+* Class for parsing the colors of shapes, written as "#rrggbb", into Color objects.
+* Every color is only parsed once, and shapes with equal colors share the same
+* Color object.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class ColorCache {
+	// stored for strings that are not colors, since null cannot be stored
+	private static final Color INVALID = new Color(0, true);
+
+	private static final ConcurrentHashMap<String, Color> BY_NAME = new ConcurrentHashMap<String, Color>();
+	private static final ConcurrentHashMap<Integer, Color> BY_VALUE = new ConcurrentHashMap<Integer, Color>();
+
+	/**
+	 * Method for getting the color written as a string
+	 * @param color, the color on the form "#rrggbb"
+	 * @return the shared color, or null if the string is not a color
+	 */
+	public static Color get(String color) {
+		if(color == null) {
+			return null;
+		}
+		Color parsed = BY_NAME.computeIfAbsent(color, ColorCache::parse);
+		return parsed == INVALID ? null : parsed;
+	}
+
+	/**
+	 * Method for getting the color with a packed value
+	 * @param argb, the color packed as by Color.getRGB
+	 * @return the shared color
+	 */
+	public static Color get(int argb) {
+		return BY_VALUE.computeIfAbsent(argb, value -> new Color(value, true));
+	}
+
+	/**
+	 * Method for parsing a color in the same way as the shapes always have
+	 * @param color, the color on the form "#rrggbb"
+	 * @return the shared color, or INVALID if the string is not a color
+	 */
+	private static Color parse(String color) {
+		try {
+			return get(Color.decode("0x" + color.substring(1)).getRGB());
+		} catch(RuntimeException e) {
+			return INVALID;
+		}
+	}
+}
@@ -1,38 +1,83 @@
 package se.miun.alag1901.dt062g.jpaint;
 
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 
-import java.util.LinkedList;
-import java.util.stream.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
 * <h1>Drawing</h1>
 * Class representing a drawable collection of shapes.
+* Large drawings switch to storing their shapes in a ShapeStore, which keeps
+* them in primitive arrays instead of one object per shape and point. The
+* number of shapes at which this happens can be set with the system property
+* jpaint.compact.threshold.
+* The shapes intersecting an area are found with a ShapeGrid, built when first
+* needed. The grid leaves out the most recently added shape, since the drawing
+* panel keeps changing it while the mouse is dragged, and assumes shapes are only
+* added and removed last, or inserted with insertShapes.
+* The total area and circumference are kept up to date as shapes are added and
+* removed in the same way, so getting them does not go through every shape. Many
+* shapes added at once, as when a drawing is loaded, are summed in parallel.
+* <p>
+* Shape objects are kept in a ShapeLog. The shapes are changed by one thread at a
+* time, synchronized on the drawing, and only the most recently added shape may
+* be changed, until another shape is added or removed. Other threads, such as one
+* saving or exporting the drawing, take a snapshot, a read only copy of the
+* drawing taken in constant time, which can be read without locks while the
+* shapes are changed. Every reader of compactly stored shapes uses flyweights
+* of its own, so readers never share them with each other or with the methods
+* changing the drawing. The list returned by getShapes is such a snapshot as well.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.3
+* @version 1.16
 * @since   2021-01-10
 */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement
-public class Drawing implements Drawable {
+public class Drawing implements Drawable, DrawingSink {
+	public static final int COMPACT_THRESHOLD = Integer.getInteger("jpaint.compact.threshold", 10000);
+	// shapes summed by every task when the totals are computed in parallel
+	private static final int TOTALS_CHUNK = 4096;
+
 	@XmlElement
 	private String name;
 	@XmlElement
 	private String author;
+	// replaced when the storage changes, readers read it once
 	@XmlElement(name="shape")
-	private LinkedList<Shape> shapes;
+	private volatile List<Shape> shapes;
+	// every shape but the last, null until needed
+	@XmlTransient
+	private ShapeGrid index;
+	// incremented whenever shapes are removed
+	@XmlTransient
+	private int removals = 0;
+	// the area and circumference of the first shapes, every shape but the last once up to date
+	@XmlTransient
+	private double totalArea = 0;
+	@XmlTransient
+	private double totalCircumference = 0;
+	@XmlTransient
+	private int totalled = 0;
 
 	/**
 	 * Default constructor
 	 */
 	public Drawing() {
-		shapes = new LinkedList<Shape>();
+		shapes = new ShapeLog();
 		name = "";
 		author = "";
 	}
@@ -45,7 +90,7 @@ public class Drawing implements Drawable {
 	public Drawing(String pName, String pAuthor) {
 		name = pName;
 		author = pAuthor;
-		shapes = new LinkedList<Shape>();
+		shapes = new ShapeLog();
 	}
 	
 	/**
@@ -60,6 +105,7 @@ public class Drawing implements Drawable {
 	 * Method for setting drawing name
 	 * @param pName, the name of the drawing
 	 */
+	@Override
 	public void setName(String pName) {
 		name = pName;
 	}
@@ -76,6 +122,7 @@ public class Drawing implements Drawable {
 	 * Method for setting drawing author
 	 * @param pAuthor, the name of the author
 	 */
+	@Override
 	public void setAuthor(String pAuthor) {
 		author = pAuthor;
 	}
@@ -84,12 +131,73 @@ public class Drawing implements Drawable {
 	 * Method for adding new shape to drawing, null shapes will be ignored
 	 * @param pShape, the shape object to be added
 	 */
-	public void addShape(Shape pShape) {
+	@Override
+	public synchronized void addShape(Shape pShape) {
 		if(pShape != null) {
 			shapes.add(pShape);
+			if(shapes.size() > COMPACT_THRESHOLD && !isCompact()) {
+				setCompact(true);
+			}
 		}
 	}
-	
+
+	/**
+	 * Method for checking if the shapes are kept in a ShapeStore
+	 * @return true if the shapes are stored compactly
+	 */
+	public boolean isCompact() {
+		return shapes instanceof ShapeStore;
+	}
+
+	/**
+	 * Method for switching between storing the shapes compactly in a ShapeStore
+	 * and as a list of shape objects
+	 * @param compact, true to use a ShapeStore
+	 */
+	public synchronized void setCompact(boolean compact) {
+		if(compact && !isCompact()) {
+			shapes = new ShapeStore(shapes);
+		} else if(!compact && isCompact()) {
+			shapes = new ShapeLog(shapes);
+		}
+	}
+
+	/**
+	 * Method for getting the drawing as it is now, the snapshot is not changed
+	 * when the drawing is and can be read by any thread
+	 * @return a read only drawing sharing the shapes
+	 */
+	public synchronized Drawing snapshot() {
+		Drawing snapshot = new Drawing(name, author);
+		snapshot.shapes = snapshotShapes();
+		return snapshot;
+	}
+
+	/**
+	 * Method for getting the shapes as they are now
+	 * @return a read only list sharing the shapes
+	 */
+	private synchronized List<Shape> snapshotShapes() {
+		if(shapes instanceof ShapeStore) {
+			return ((ShapeStore)shapes).snapshot();
+		}
+		return ((ShapeLog)shapes).snapshot();
+	}
+
+	/**
+	 * Method for performing an action on every shape in order, compactly stored
+	 * shapes are passed as flyweights only valid until the action returns
+	 * @param action, the action to perform
+	 */
+	public void forEachShape(Consumer<? super Shape> action) {
+		List<Shape> shapes = this.shapes;
+		if(shapes instanceof ShapeStore) {
+			((ShapeStore)shapes).forEachView(action);
+		} else {
+			shapes.forEach(action);
+		}
+	}
+
 	/**
 	 * Method for getting number of drawings in shape
 	 * @return, the number of drawings
@@ -98,40 +206,116 @@ public class Drawing implements Drawable {
 		return shapes.size();
 	}
 	
+	/**
+	 * Method for getting the number of points of all shapes
+	 * @return the number of points
+	 */
+	public long getPointCount() {
+		long[] count = { 0 };
+		forEachShape(shape -> count[0] += shape.getPointCount());
+		return count[0];
+	}
+
 	/**
 	 * Method for getting total circumference of all shapes
 	 * @return, the total circumference
 	 */
-	public double getTotalCircumference() {
-		// use mapToDouble to convert stream to DoubleStream, then use sum to get total circumference
-		return shapes.stream().mapToDouble(shape -> {
-			try {
-				return shape.getCircumference();
-			} catch(UninitializedPointException e) {
-				return 0;
-			}
-		}).sum();
+	public synchronized double getTotalCircumference() {
+		updateTotals();
+		// the last shape may still be changing, so it is not part of the totals
+		return shapes.isEmpty() ? 0 : totalCircumference + getCircumference(shapes.get(shapes.size() - 1));
 	}
 	
 	/**
 	 * Method for getting total area of all shapes
 	 * @return, the total area
 	 */
-	public double getTotalArea() {
-		return shapes.stream().mapToDouble(shape -> {
-			try {
-				return shape.getArea();
-			} catch(UninitializedPointException e) {
-				return 0;
+	public synchronized double getTotalArea() {
+		updateTotals();
+		return shapes.isEmpty() ? 0 : totalArea + getArea(shapes.get(shapes.size() - 1));
+	}
+
+	/**
+	 * Method for computing the totals of every shape again, in parallel
+	 */
+	public synchronized void recomputeTotals() {
+		resetTotals();
+		updateTotals();
+	}
+
+	/**
+	 * Method for adding the shapes added since the totals were last used to them
+	 */
+	private void updateTotals() {
+		int target = Math.max(0, shapes.size() - 1);
+		if(totalled > target) {
+			// shapes have been removed in some other way than deleteLast
+			resetTotals();
+		}
+
+		if(target - totalled > TOTALS_CHUNK) {
+			int from = totalled;
+			int chunks = (target - from + TOTALS_CHUNK - 1) / TOTALS_CHUNK;
+			double[] sums = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+				// every task needs flyweights of its own
+				Shape[] views = createViews();
+				double[] sum = new double[2];
+				int to = Math.min(target, from + (chunk + 1) * TOTALS_CHUNK);
+				for(int i = from + chunk * TOTALS_CHUNK; i < to; ++i) {
+					Shape shape = getShape(i, views);
+					sum[0] += getArea(shape);
+					sum[1] += getCircumference(shape);
+				}
+				return sum;
+			}).reduce(new double[2], (a, b) -> new double[] { a[0] + b[0], a[1] + b[1] });
+			totalArea += sums[0];
+			totalCircumference += sums[1];
+		} else {
+			Shape[] views = createViews();
+			for(int i = totalled; i < target; ++i) {
+				Shape shape = getShape(i, views);
+				totalArea += getArea(shape);
+				totalCircumference += getCircumference(shape);
 			}
-		}).sum();
+		}
+		totalled = target;
+	}
+
+	/**
+	 * Method for emptying the totals so every shape is summed again when next used
+	 */
+	private void resetTotals() {
+		totalArea = 0;
+		totalCircumference = 0;
+		totalled = 0;
+	}
+
+	/**
+	 * Method for getting the area of a shape, where incomplete shapes have none
+	 * @param shape, the shape
+	 * @return the area
+	 */
+	private static double getArea(Shape shape) {
+		return shape.isComplete() ? shape.getAreaOrNaN() : 0;
+	}
+
+	/**
+	 * Method for getting the circumference of a shape, where incomplete shapes have none
+	 * @param shape, the shape
+	 * @return the circumference
+	 */
+	private static double getCircumference(Shape shape) {
+		return shape.isComplete() ? shape.getCircumferenceOrNaN() : 0;
 	}
 	
 	/**
 	 * Method for clearing all drawing data
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		shapes.clear();
+		index = null;
+		resetTotals();
+		++removals;
 		name = "";
 		author = "";
 	}
@@ -153,23 +337,171 @@ public class Drawing implements Drawable {
 	}
 	
 	/**
-	 * Method for getting the list of shapes that compose the drawing
-	 * @return the list of shapes
+	 * Method for getting the list of shapes that compose the drawing, as a
+	 * snapshot that is not changed when the drawing is. Shapes are added and
+	 * removed through the drawing
+	 * @return a read only list of the shapes
 	 */
-	public LinkedList<Shape> getShapes() {
-		return this.shapes;
+	public List<Shape> getShapes() {
+		return snapshotShapes();
 	}
 	
 	/**
 	 * Method for deleting the most recently added shapes of the drawing
 	 * @param noToDelete, the number of shapes to delete
 	 */
-	public void deleteLast(int nrToDelete) {
+	public synchronized void deleteLast(int nrToDelete) {
 		if(!this.shapes.isEmpty()) {
+			Shape[] views = createViews();
 			for(int i = 0; i < nrToDelete; ++i) {
-				this.shapes.removeLast();
+				int last = this.shapes.size() - 1;
+				if(last < totalled) {
+					// take the shape out of the totals before it is removed
+					Shape shape = getShape(last, views);
+					totalArea -= getArea(shape);
+					totalCircumference -= getCircumference(shape);
+					totalled = last;
+				}
+				this.shapes.remove(last);
+			}
+		}
+		
+		++removals;
+		
+		// remove the shapes from the index before other shapes take their places
+		if(index != null) {
+			while(index.size() > Math.max(0, shapes.size() - 1)) {
+				index.removeLast();
+			}
+		}
+	}
+	
+	/**
+	 * Method for inserting shapes below the most recently added ones. The shapes
+	 * above are moved up rather than removed, so the number of removals does not
+	 * change and anything drawn of the shapes below stays valid
+	 * @param position, the index to insert the shapes at
+	 * @param inserted, the shapes to insert, in order
+	 */
+	public synchronized void insertShapes(int position, List<? extends Shape> inserted) {
+		if(inserted.isEmpty()) {
+			return;
+		}
+
+		// take the shapes above off the top, out of the totals and index, as deleteLast does
+		List<Shape> above = new ArrayList<Shape>(shapes.subList(position, shapes.size()));
+		Shape[] views = createViews();
+		while(shapes.size() > position) {
+			int last = shapes.size() - 1;
+			if(last < totalled) {
+				Shape shape = getShape(last, views);
+				totalArea -= getArea(shape);
+				totalCircumference -= getCircumference(shape);
+				totalled = last;
+			}
+			shapes.remove(last);
+		}
+		if(index != null) {
+			while(index.size() > Math.max(0, shapes.size() - 1)) {
+				index.removeLast();
+			}
+		}
+
+		for(Shape shape : inserted) {
+			addShape(shape);
+		}
+		for(Shape shape : above) {
+			addShape(shape);
+		}
+	}
+
+	/**
+	 * Method for replacing runs of paintbrush circles, as painted before there
+	 * were strokes, with a stroke through their centers. Circles are merged when
+	 * they follow each other, have the same color and overlap, other shapes are
+	 * kept as they are.
+	 * @return the number of shapes removed from the drawing
+	 */
+	public synchronized int mergeBrushCircles() {
+		List<Shape> merged = new ArrayList<Shape>();
+		Stroke stroke = null;
+		Shape previous = null;
+
+		for(int i = 0; i < shapes.size(); ++i) {
+			Shape shape = shapes.get(i);
+			if(isBrushCircle(shape) && isBrushCircle(previous) && Objects.equals(shape.getColor(), previous.getColor())
+			   && Math.hypot(shape.getPointX(0) - previous.getPointX(0),
+							 shape.getPointY(0) - previous.getPointY(0)) <= Stroke.BRUSH_WIDTH) {
+				if(stroke == null) {
+					// the previous circle starts the stroke
+					stroke = new Stroke(previous.getPointX(0), previous.getPointY(0), previous.getColor(),
+										Stroke.BRUSH_WIDTH);
+					merged.set(merged.size() - 1, stroke);
+				}
+				stroke.addPoint(shape.getPointX(0), shape.getPointY(0));
+			} else {
+				stroke = null;
+				merged.add(shape);
+			}
+			previous = shape;
+		}
+
+		int removed = shapes.size() - merged.size();
+		if(removed > 0) {
+			shapes = isCompact() ? new ShapeStore(merged) : new ShapeLog(merged);
+			index = null;
+			resetTotals();
+			++removals;
+		}
+		return removed;
+	}
+
+	/**
+	 * Method for removing the points of every stroke that hardly change its shape
+	 * @param tolerance, the largest distance a removed point may have to the
+	 * simplified stroke
+	 * @return the number of points removed
+	 */
+	public synchronized int simplifyStrokes(double tolerance) {
+		// snapshots may share the strokes, so they are simplified as copies
+		List<Shape> simplified = new ArrayList<Shape>(shapes.size());
+		int removed = 0;
+		for(Shape shape : shapes) {
+			if(shape instanceof Stroke) {
+				Stroke stroke = (Stroke)shape.copy();
+				removed += StrokeSimplifier.simplify(stroke, tolerance);
+				shape = stroke;
 			}
+			simplified.add(shape);
 		}
+
+		if(removed > 0) {
+			shapes = isCompact() ? new ShapeStore(simplified) : new ShapeLog(simplified);
+			index = null;
+			resetTotals();
+			++removals;
+		}
+		return removed;
+	}
+
+	/**
+	 * Method for checking if a shape is a circle painted by the paintbrush
+	 * @param shape, the shape, or null
+	 * @return true if the shape is a brush circle
+	 */
+	private static boolean isBrushCircle(Shape shape) {
+		// the paintbrush put the second point 8 pixels right and down of the center
+		return shape instanceof Circle && shape.getPointCount() == 2
+			   && shape.getPointX(1) - shape.getPointX(0) == 8 && shape.getPointY(1) - shape.getPointY(0) == 8;
+	}
+
+	/**
+	 * Method for getting the number of times shapes have been removed from the
+	 * drawing, so anything derived from the shapes can tell when to start over
+	 * @return the number of removals
+	 */
+	public int getRemovals() {
+		return removals;
 	}
 	
 	/**
@@ -185,15 +517,240 @@ public class Drawing implements Drawable {
 	public void draw() {
 		System.out.println("A drawing by " + author + " called " + name);
 		
-		for(Shape shape : shapes) {
-			System.out.println(shape.toString());
-		}
+		forEachShape(shape -> System.out.println(shape.toString()));
 	}
 
 	@Override
 	public void draw(Graphics g) {
-		for(Shape shape : shapes) {
-			shape.draw(g);
+		forEachShape(shape -> shape.draw(g));
+	}
+
+	/**
+	 * Method for drawing a range of the shapes in order
+	 * @param g, a Graphics object
+	 * @param from, the index of the first shape to draw
+	 * @param to, the index after the last shape to draw
+	 */
+	public void draw(Graphics g, int from, int to) {
+		List<Shape> shapes = this.shapes;
+		if(shapes instanceof ShapeStore) {
+			ShapeStore store = (ShapeStore)shapes;
+			Shape[] views = store.createViews();
+			for(int i = from; i < to; ++i) {
+				store.view(i, views).draw(g);
+			}
+		} else {
+			for(Shape shape : shapes.subList(from, to)) {
+				shape.draw(g);
+			}
+		}
+	}
+
+	/**
+	 * Method for drawing only the shapes that intersect an area, in the same order
+	 * and with the same result within the area as drawing every shape
+	 * @param g, a Graphics object
+	 * @param area, the area to draw, or null to draw every shape
+	 */
+	public void draw(Graphics g, java.awt.Rectangle area) {
+		if(area == null) {
+			draw(g);
+			return;
+		}
+
+		// the index and flyweights must belong to the shapes drawn, which are only replaced under the lock
+		synchronized(this) {
+			draw(g, area, updateIndex(), createViews());
+		}
+	}
+
+	/**
+	 * Method for drawing the shapes that intersect an area using an index that
+	 * is already up to date, which lets several threads draw the drawing at once
+	 * while it is not changed
+	 * @param g, a Graphics object
+	 * @param area, the area to draw
+	 * @param grid, the index as returned by updateIndex
+	 * @param views, the flyweights of the calling thread to draw compactly stored
+	 * shapes with, as returned by createViews
+	 */
+	void draw(Graphics g, java.awt.Rectangle area, ShapeGrid grid, Shape[] views) {
+		List<Shape> shapes = this.shapes;
+		if(views == null) {
+			// the shapes were stored compactly after the flyweights were created
+			views = createViews(shapes);
+		}
+		// circles and strokes turn antialiasing on for everything drawn after them, even when skipped
+		int firstAntialiased = grid.getFirstAntialiased();
+		boolean antialiased = false;
+
+		for(int i : grid.query(area)) {
+			if(!antialiased && firstAntialiased >= 0 && firstAntialiased < i) {
+				((Graphics2D)g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				antialiased = true;
+			}
+			getShape(shapes, i, views).draw(g);
+		}
+
+		if(!shapes.isEmpty()) {
+			Shape last = shapes.get(shapes.size() - 1);
+			if(last.getBounds().intersects(area)) {
+				if(!antialiased && firstAntialiased >= 0) {
+					((Graphics2D)g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				}
+				last.draw(g);
+			}
+		}
+	}
+
+	/**
+	 * Method for getting the area covered by the shapes that intersect an area
+	 * @param area, the area
+	 * @param grid, the index as returned by updateIndex
+	 * @return the union of the bounds of the shapes, empty if there are none
+	 */
+	java.awt.Rectangle getBounds(java.awt.Rectangle area, ShapeGrid grid) {
+		List<Shape> shapes = this.shapes;
+		java.awt.Rectangle covered = new java.awt.Rectangle();
+		for(int i : grid.query(area)) {
+			covered = union(covered, grid.getBounds(i));
+		}
+		if(!shapes.isEmpty()) {
+			java.awt.Rectangle last = shapes.get(shapes.size() - 1).getBounds();
+			if(last.intersects(area)) {
+				covered = union(covered, last);
+			}
+		}
+		return covered;
+	}
+
+	/**
+	 * Method for getting the area covered by a range of the shapes
+	 * @param from, the index of the first shape
+	 * @param to, the index after the last shape
+	 * @return the union of the bounds of the shapes, empty if there are none
+	 */
+	java.awt.Rectangle getBounds(int from, int to) {
+		List<Shape> shapes = this.shapes;
+		Shape[] views = createViews(shapes);
+		java.awt.Rectangle covered = new java.awt.Rectangle();
+		for(int i = from; i < to; ++i) {
+			covered = union(covered, getShape(shapes, i, views).getBounds());
+		}
+		return covered;
+	}
+
+	/**
+	 * Method for checking if drawing the first shapes in order leaves
+	 * antialiasing on for the shapes drawn after them
+	 * @param to, the index after the last shape drawn
+	 * @return true if a shape among them turns antialiasing on
+	 */
+	boolean isAntialiased(int to) {
+		int firstAntialiased = updateIndex().getFirstAntialiased();
+		if(firstAntialiased >= 0 && firstAntialiased < to) {
+			return true;
+		}
+		// the last shape is not in the index
+		List<Shape> shapes = this.shapes;
+		return to == shapes.size() && to > 0 && shapes.get(to - 1).isAntialiased();
+	}
+
+	/**
+	 * Method for joining two areas, where an empty area adds nothing
+	 * @param first, the first area
+	 * @param second, the second area
+	 * @return the smallest area holding both
+	 */
+	private static java.awt.Rectangle union(java.awt.Rectangle first, java.awt.Rectangle second) {
+		if(first.isEmpty()) {
+			return second;
+		}
+		return second.isEmpty() ? first : first.union(second);
+	}
+
+	/**
+	 * Method for adding the shapes added since the index was last used to it
+	 * @return the index of every shape but the last
+	 */
+	synchronized ShapeGrid updateIndex() {
+		int target = Math.max(0, shapes.size() - 1);
+		if(index == null || index.size() > target) {
+			// shapes have been removed in some other way than deleteLast
+			index = new ShapeGrid();
+		}
+		
+		if(shapes instanceof ShapeStore) {
+			ShapeStore store = (ShapeStore)shapes;
+			Shape[] views = store.createViews();
+			while(index.size() < target) {
+				index.add(store.view(index.size(), views));
+			}
+		} else {
+			for(Shape shape : shapes.subList(index.size(), target)) {
+				index.add(shape);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Method for creating flyweights for drawing compactly stored shapes
+	 * @return the flyweights, or null if the shapes are not compactly stored
+	 */
+	Shape[] createViews() {
+		return createViews(shapes);
+	}
+
+	/**
+	 * Method for creating flyweights for reading compactly stored shapes
+	 * @param shapes, the shapes to read
+	 * @return the flyweights, or null if the shapes are not compactly stored
+	 */
+	private static Shape[] createViews(List<Shape> shapes) {
+		if(shapes instanceof ShapeStore) {
+			return ((ShapeStore)shapes).createViews();
+		}
+		return null;
+	}
+
+	/**
+	 * Method for getting a shape by index, compactly stored shapes are returned
+	 * as flyweights only valid until the next call with the same flyweights
+	 * @param i, the index of the shape
+	 * @param views, the flyweights of the calling thread, as returned by createViews
+	 * @return the shape
+	 */
+	private Shape getShape(int i, Shape[] views) {
+		return getShape(shapes, i, views);
+	}
+
+	/**
+	 * Method for getting a shape by index from the shapes read by the caller
+	 * @param shapes, the shapes
+	 * @param i, the index of the shape
+	 * @param views, the flyweights of the calling thread, as returned by createViews
+	 * @return the shape
+	 */
+	private static Shape getShape(List<Shape> shapes, int i, Shape[] views) {
+		if(shapes instanceof ShapeStore) {
+			return ((ShapeStore)shapes).view(i, views);
+		}
+		return shapes.get(i);
+	}
+
+	/**
+	 * Method called by JAXB after the drawing has been read, switches large
+	 * drawings to compact storage and others to a ShapeLog, if JAXB has given the
+	 * drawing a list of its own
+	 * @param unmarshaller, the unmarshaller
+	 * @param parent, the parent object, null for a drawing
+	 */
+	void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+		if(shapes.size() > COMPACT_THRESHOLD) {
+			setCompact(true);
+		} else if(!(shapes instanceof ShapeLog)) {
+			shapes = new ShapeLog(shapes);
 		}
 	}
 
@@ -1,27 +1,78 @@
 package se.miun.alag1901.dt062g.jpaint;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
+import java.awt.Color;
+import java.awt.DisplayMode;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
 * <h1>DrawingPanel</h1>
 * Class extending JPanel to allow user to display and create drawing based on 
-* basic geometric shapes
+* basic geometric shapes. Areas changed while the mouse is dragged are collected
+* and repainted together at most once per display refresh. The number of frames
+* and pixels painted during the last drag can be read once it has ended, and are
+* printed as well if the system property jpaint.drag.report is true.
+* <p>
+* Every shape but the last is drawn once into an offscreen image, which is copied
+* to the screen on repaint. Only the last shape, which may still be changing, is
+* drawn on every repaint. New shapes are added to the image as they are finished,
+* and the image is drawn again from scratch when shapes are removed, the drawing
+* is replaced, or the panel changes size or color. If there is not enough memory
+* for the image, the shapes that intersect the repainted area are drawn straight
+* to the screen on every repaint instead, using the grid index of the drawing.
+* <p>
+* The panel keeps the history of the drawing shown. Undo only draws the area
+* covered by the removed shapes again, and redone shapes are added to the image
+* like new ones. Shapes inserted below the steps are drawn onto the image, and
+* only where they overlap the steps already in it is the image drawn again.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.0
+* @version 1.8
 * @since   2020-12-20
 */
 public class DrawingPanel extends JPanel {
 	private static final long serialVersionUID = 1;
+	private static final boolean REPORT_DRAGS = Boolean.getBoolean("jpaint.drag.report");
 	private Drawing drawing;
 	
+	// the area waiting to be repainted, and the timer repainting it
+	private java.awt.Rectangle dirty;
+	private final Timer repaintTimer = new Timer(frameDelay(), e -> flush());
+	
+	// instrumentation of the current drag
+	private boolean measuring = false;
+	private boolean reportPending = false;
+	private long framesPainted = 0;
+	private long pixelsPainted = 0;
+	
+	// the finished shapes, drawn on the background color
+	private BufferedImage buffer;
+	// the size of the panel for which the image could not be allocated, not tried again
+	private java.awt.Dimension failedSize;
+	private Graphics2D bufferGraphics;
+	private int bufferedShapes = 0;
+	private Drawing bufferedDrawing;
+	private int bufferedRemovals;
+	private Color bufferedBackground;
+	// the image areas of the offscreen image are drawn again in after undo, as large as it
+	private BufferedImage scratch;
+	
+	// the steps of the drawing that can be undone and redone
+	private final History history = new History();
+	
 	/**
 	 * Default constructor
 	 */
 	DrawingPanel() {
 		drawing = new Drawing();
+		repaintTimer.setRepeats(false);
 	}
 	
 	/**
@@ -33,6 +84,8 @@ public class DrawingPanel extends JPanel {
 		super.paintComponent(null);
 		
 		this.drawing = drawing;
+		repaintTimer.setRepeats(false);
+		history.reset(drawing.getSize());
 		
 		this.repaint();
 	}
@@ -51,6 +104,8 @@ public class DrawingPanel extends JPanel {
 	 */
 	public void setDrawing(Drawing drawing) {
 		this.drawing = drawing;
+		invalidateBuffer();
+		history.reset(drawing.getSize());
 		
 		// repaint based on new drawing
 		this.repaint();
@@ -65,24 +120,326 @@ public class DrawingPanel extends JPanel {
 		for(Shape shape : drawing.getShapes()) {
 			this.drawing.addShape(shape);
 		}
+		// the added drawing is undone as one step
+		recordStep();
 		
 		this.repaint();
 	}
 	
 	/**
-	 * Method for undoing the last added shapes
-	 * @param noToUndo, the number of shapes to undo
+	 * Method for making the shapes added since the last step, such as the shape
+	 * or stroke of a mouse drag, one step of the history
+	 */
+	public void recordStep() {
+		history.record(drawing.getSize());
+	}
+	
+	/**
+	 * Method for adding shapes that are not steps of the history, such as the
+	 * shapes of a drawing still being received, below the steps that can be undone
+	 * @param shapes, the shapes to add
+	 */
+	public void addBelowHistory(List<? extends Shape> shapes) {
+		// bring the offscreen image up to date, so the inserted shapes can be drawn into it
+		boolean buffered = updateBuffer();
+		int removals = drawing.getRemovals();
+		int from = history.insert(drawing, shapes);
+		int to = from + shapes.size();
+		java.awt.Rectangle area = drawing.getBounds(from, to);
+		
+		if(buffered && bufferedRemovals == removals && bufferedShapes > from) {
+			// the image already holds shapes that are now above the inserted ones, draw them
+			// on top, then the area where they overlap again so the shapes above stay on top
+			setBufferAntialiasing(from);
+			drawing.draw(bufferGraphics, from, to);
+			int above = bufferedShapes - from;
+			bufferedShapes += shapes.size();
+			setBufferAntialiasing(bufferedShapes);
+			java.awt.Rectangle overlap = area.intersection(drawing.getBounds(to, to + above))
+					.intersection(new java.awt.Rectangle(buffer.getWidth(), buffer.getHeight()));
+			if(!overlap.isEmpty()) {
+				drawArea(overlap);
+			}
+		}
+		this.repaint(area);
+	}
+
+	/**
+	 * Method for forgetting the history, needed if shapes that are already
+	 * finished are removed or replaced
+	 */
+	public void clearHistory() {
+		history.reset(drawing.getSize());
+	}
+	
+	/**
+	 * Method for undoing the last step, only the area it covered is drawn again
+	 * @return true if there was a step to undo
+	 */
+	public boolean undo() {
+		if(!history.canUndo()) {
+			return false;
+		}
+		
+		// bring the offscreen image up to date, so only the removed shapes need to be taken out of it
+		boolean buffered = updateBuffer();
+		int removals = drawing.getRemovals();
+		java.awt.Rectangle area = drawing.getBounds(Math.min(history.getUndoSize(), drawing.getSize()),
+													 drawing.getSize());
+		history.undo(drawing);
+		
+		if(buffered && bufferedRemovals == removals) {
+			// the image holds every shape but the removed ones outside the area, draw the rest within it
+			java.awt.Rectangle visible = area.intersection(new java.awt.Rectangle(buffer.getWidth(), buffer.getHeight()));
+			if(!visible.isEmpty()) {
+				drawArea(visible);
+			}
+			
+			bufferedShapes = drawing.getSize();
+			bufferedRemovals = drawing.getRemovals();
+			setBufferAntialiasing(bufferedShapes);
+		} else {
+			invalidateBuffer();
+		}
+		
+		this.repaint(area);
+		return true;
+	}
+	
+	/**
+	 * Method for setting the antialiasing of the offscreen image as drawing the
+	 * first shapes in order would have left it
+	 * @param shapes, the number of shapes drawn
+	 */
+	private void setBufferAntialiasing(int shapes) {
+		bufferGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, drawing.isAntialiased(shapes)
+				? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+	}
+	
+	/**
+	 * Method for drawing an area of the offscreen image again with every shape
+	 * @param area, the area, within the image
+	 */
+	private void drawArea(java.awt.Rectangle area) {
+		if(scratch == null || scratch.getWidth() != buffer.getWidth() || scratch.getHeight() != buffer.getHeight()) {
+			scratch = new BufferedImage(buffer.getWidth(), buffer.getHeight(), BufferedImage.TYPE_INT_RGB);
+		}
+		
+		// Java2D moves the antialiased edges of shapes clipped far inside them, as TileRenderer explains,
+		// so draw with a clip around the shapes instead and only copy the area
+		java.awt.Rectangle covered = drawing.getBounds(area, drawing.updateIndex()).union(area)
+				.intersection(new java.awt.Rectangle(scratch.getWidth(), scratch.getHeight()));
+		Graphics2D g = scratch.createGraphics();
+		g.clip(covered);
+		g.setColor(bufferedBackground);
+		g.fillRect(covered.x, covered.y, covered.width, covered.height);
+		drawing.draw(g, area);
+		g.dispose();
+		
+		Object pixels = scratch.getRaster().getDataElements(area.x, area.y, area.width, area.height, null);
+		buffer.getRaster().setDataElements(area.x, area.y, area.width, area.height, pixels);
+	}
+	
+	/**
+	 * Method for redoing the last step undone
+	 * @return true if there was a step to redo
+	 */
+	public boolean redo() {
+		if(!history.canRedo()) {
+			return false;
+		}
+		
+		int from = drawing.getSize();
+		history.redo(drawing);
+		this.repaint(drawing.getBounds(from, drawing.getSize()));
+		return true;
+	}
+	
+	/**
+	 * Method for making the offscreen image be drawn again from scratch on the
+	 * next repaint, needed if shapes that are already finished are changed
+	 */
+	public void invalidateBuffer() {
+		if(bufferGraphics != null) {
+			bufferGraphics.dispose();
+			bufferGraphics = null;
+		}
+	}
+	
+	/**
+	 * Method for bringing the offscreen image up to date with the drawing
+	 * @return true if the image can be used, false if the panel has no size or
+	 * there is not enough memory for the image
+	 */
+	private boolean updateBuffer() {
+		int width = getWidth(), height = getHeight();
+		if(width <= 0 || height <= 0 || getSize().equals(failedSize)) {
+			return false;
+		}
+		
+		if(buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+			invalidateBuffer();
+			buffer = null;
+			scratch = null;
+			try {
+				if((long)width * height <= Integer.MAX_VALUE) {
+					buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				}
+			} catch(OutOfMemoryError e) {
+				// too large to keep offscreen
+			}
+			if(buffer == null) {
+				// paintComponent draws the shapes within the clip instead
+				failedSize = getSize();
+				return false;
+			}
+			failedSize = null;
+		}
+		
+		int finished = Math.max(0, drawing.getSize() - 1);
+		if(bufferGraphics == null || bufferedDrawing != drawing || bufferedRemovals != drawing.getRemovals()
+		   || !getBackground().equals(bufferedBackground) || bufferedShapes > drawing.getSize()) {
+			// start over with just the background
+			invalidateBuffer();
+			bufferGraphics = buffer.createGraphics();
+			bufferGraphics.setColor(getBackground());
+			bufferGraphics.fillRect(0, 0, width, height);
+			bufferedShapes = 0;
+			bufferedDrawing = drawing;
+			bufferedRemovals = drawing.getRemovals();
+			bufferedBackground = getBackground();
+		}
+		
+		// keep using the same graphics so rendering hints carry over as when drawing everything at once,
+		// after undo the image may also hold the last shape
+		if(bufferedShapes < finished) {
+			drawing.draw(bufferGraphics, bufferedShapes, finished);
+			bufferedShapes = finished;
+		}
+		return true;
+	}
+	
+	/**
+	 * Method for getting the time between repaints of dirty areas
+	 * @return the time in milliseconds, one refresh of the screen
+	 */
+	private static int frameDelay() {
+		int rate = DisplayMode.REFRESH_RATE_UNKNOWN;
+		if(!GraphicsEnvironment.isHeadless()) {
+			rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDisplayMode().getRefreshRate();
+		}
+		return 1000 / (rate > 0 ? rate : 60);
+	}
+	
+	/**
+	 * Method for repainting an area, changes made within one display refresh are
+	 * repainted together
+	 * @param area, the area that has changed
+	 */
+	public void repaintArea(java.awt.Rectangle area) {
+		if(dirty == null) {
+			dirty = new java.awt.Rectangle(area);
+		} else {
+			dirty.add(area);
+		}
+		
+		if(!repaintTimer.isRunning()) {
+			repaintTimer.start();
+		}
+	}
+	
+	/**
+	 * Method for repainting the collected area right away
 	 */
-	public void undo(int nrToUndo) {
-		this.drawing.deleteLast(nrToUndo);
+	private void flush() {
+		repaintTimer.stop();
+		if(dirty != null) {
+			this.repaint(dirty);
+			dirty = null;
+		}
+	}
+	
+	/**
+	 * Method for starting to count the frames and pixels painted during a drag
+	 */
+	public void beginDrag() {
+		measuring = true;
+		reportPending = false;
+		framesPainted = 0;
+		pixelsPainted = 0;
+	}
+	
+	/**
+	 * Method for ending a drag, the remaining changes are repainted and the
+	 * counting stops after that
+	 */
+	public void endDrag() {
+		if(dirty == null) {
+			report();
+		} else {
+			reportPending = measuring;
+			flush();
+		}
+	}
+	
+	/**
+	 * Method for ending the counts of the last drag, printed only if asked for
+	 */
+	private void report() {
+		if(measuring) {
+			measuring = false;
+			reportPending = false;
+			if(REPORT_DRAGS) {
+				System.out.println("Drag painted " + framesPainted + " frames and " + pixelsPainted
+								   + " pixels, full repaints would have painted "
+								   + framesPainted * getWidth() * getHeight() + " pixels");
+			}
+		}
+	}
+	
+	/**
+	 * Method for getting the number of frames painted during the last drag
+	 * @return the number of frames
+	 */
+	public long getFramesPainted() {
+		return framesPainted;
+	}
+	
+	/**
+	 * Method for getting the number of pixels painted during the last drag
+	 * @return the number of pixels
+	 */
+	public long getPixelsPainted() {
+		return pixelsPainted;
 	}
 	
 	@Override
 	public void paintComponent(Graphics g) {
-		super.paintComponent(g);
+		java.awt.Rectangle clip = g.getClipBounds();
+		if(this.drawing != null && updateBuffer()) {
+			// copy the finished shapes and draw the last one on top
+			g.drawImage(buffer, 0, 0, null);
+			if(bufferedShapes < drawing.getSize()) {
+				((Graphics2D)g).setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						bufferGraphics.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+				drawing.draw(g, bufferedShapes, drawing.getSize());
+			}
+		} else {
+			// no offscreen image, only draw the shapes that intersect the area being repainted
+			super.paintComponent(g);
+			if(this.drawing != null) {
+				this.drawing.draw(g, clip);
+			}
+		}
 		
-		if(this.drawing != null) {
-			this.drawing.draw(g);
+		if(measuring) {
+			++framesPainted;
+			pixelsPainted += clip == null ? (long)getWidth() * getHeight() : (long)clip.width * clip.height;
+			
+			if(reportPending) {
+				report();
+			}
 		}
 	}
 }
@@ -0,0 +1,235 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.InputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+* <h1>DrawingReader</h1>
+* Class for reading drawings in the XML format written by FileHandler with a
+* StAX parser. Every shape is passed to a DrawingSink as soon as it has been
+* read, so no more than one shape has to be kept in memory by the reader.
+* Shapes of unknown types are skipped.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class DrawingReader {
+	private static final XMLInputFactory XML = createFactory();
+
+	/**
+	 * Method for creating the factory of the XML readers, without support for
+	 * DTDs since drawings never use them
+	 * @return the factory
+	 */
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		return factory;
+	}
+
+	/**
+	 * Method for reading a drawing from a stream, the stream is not closed
+	 * @param in, the stream to read from
+	 * @param sink, the sink receiving the parts of the drawing
+	 * @throws XMLStreamException if the stream does not hold a drawing
+	 */
+	public static void read(InputStream in, DrawingSink sink) throws XMLStreamException {
+		XMLStreamReader reader = XML.createXMLStreamReader(in);
+		try {
+			reader.nextTag();
+			reader.require(XMLStreamConstants.START_ELEMENT, null, "drawing");
+
+			while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				switch(reader.getLocalName()) {
+					case "name": {
+						sink.setName(reader.getElementText());
+						break;
+					}
+					case "author": {
+						sink.setAuthor(reader.getElementText());
+						break;
+					}
+					case "shape": {
+						Shape shape = readShape(reader);
+						if(shape != null) {
+							sink.addShape(shape);
+						}
+						break;
+					}
+					default: {
+						skipElement(reader);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Method for reading a shape element, the reader is left at its end tag
+	 * @param reader, a reader positioned at the start tag of the shape
+	 * @return the shape, or null if the type of the shape is unknown
+	 * @throws XMLStreamException
+	 */
+	private static Shape readShape(XMLStreamReader reader) throws XMLStreamException {
+		Shape shape = createShape(reader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type"));
+		if(shape == null) {
+			skipElement(reader);
+			return null;
+		}
+
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch(reader.getLocalName()) {
+				case "color": {
+					shape.setColor(reader.getElementText());
+					break;
+				}
+				case "point": {
+					Point point = readPoint(reader);
+					shape.appendPoint(point.getX(), point.getY());
+					break;
+				}
+				case "path": {
+					if(shape instanceof Stroke) {
+						((Stroke)shape).setPath(parseList(reader.getElementText()));
+					} else {
+						skipElement(reader);
+					}
+					break;
+				}
+				case "width": {
+					if(shape instanceof Stroke) {
+						((Stroke)shape).setWidth(parseDouble(reader.getElementText()));
+					} else {
+						skipElement(reader);
+					}
+					break;
+				}
+				default: {
+					skipElement(reader);
+				}
+			}
+		}
+		return shape;
+	}
+
+	/**
+	 * Method for reading a point element, the reader is left at its end tag
+	 * @param reader, a reader positioned at the start tag of the point
+	 * @return the point
+	 * @throws XMLStreamException
+	 */
+	private static Point readPoint(XMLStreamReader reader) throws XMLStreamException {
+		Point point = new Point();
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			switch(reader.getLocalName()) {
+				case "x": {
+					point.setX(parseDouble(reader.getElementText()));
+					break;
+				}
+				case "y": {
+					point.setY(parseDouble(reader.getElementText()));
+					break;
+				}
+				default: {
+					skipElement(reader);
+				}
+			}
+		}
+		return point;
+	}
+
+	/**
+	 * Method for creating an empty shape from the xsi:type of its element
+	 * @param type, the type, possibly with a namespace prefix
+	 * @return the shape, or null if the type is unknown
+	 */
+	static Shape createShape(String type) {
+		if(type == null) {
+			return null;
+		}
+		switch(type.substring(type.indexOf(':') + 1)) {
+			case "circle": {
+				return new Circle();
+			}
+			case "rectangle": {
+				return new Rectangle();
+			}
+			case "stroke": {
+				return new Stroke();
+			}
+			default: {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Method for parsing a double written as xs:double
+	 * @param text, the text
+	 * @return the value
+	 * @throws XMLStreamException if the text is not a number
+	 */
+	private static double parseDouble(String text) throws XMLStreamException {
+		text = text.trim();
+		switch(text) {
+			case "INF": {
+				return Double.POSITIVE_INFINITY;
+			}
+			case "-INF": {
+				return Double.NEGATIVE_INFINITY;
+			}
+			default: {
+				try {
+					return Double.parseDouble(text);
+				} catch(NumberFormatException e) {
+					throw new XMLStreamException("not a number: " + text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method for parsing a list of numbers separated by whitespace, as written by
+	 * JAXB for an array annotated with XmlList
+	 * @param text, the text
+	 * @return the numbers
+	 * @throws XMLStreamException if a value is not a number
+	 */
+	private static float[] parseList(String text) throws XMLStreamException {
+		text = text.trim();
+		if(text.isEmpty()) {
+			return new float[0];
+		}
+		String[] values = text.split("\\s+");
+		float[] numbers = new float[values.length];
+		for(int i = 0; i < values.length; ++i) {
+			numbers[i] = (float)parseDouble(values[i]);
+		}
+		return numbers;
+	}
+
+	/**
+	 * Method for skipping an element and everything in it
+	 * @param reader, a reader positioned at the start tag of the element
+	 * @throws XMLStreamException
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while(depth > 0) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				++depth;
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				--depth;
+			}
+		}
+	}
+}
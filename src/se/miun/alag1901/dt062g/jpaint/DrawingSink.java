@@ -0,0 +1,30 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+/**
+* <h1>DrawingSink</h1>
+* Interface for receiving the parts of a drawing one at a time while it is
+* being read, so shapes can be used before the whole drawing has been read.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public interface DrawingSink {
+	/**
+	 * Method called when the name of the drawing has been read
+	 * @param pName, the name of the drawing
+	 */
+	void setName(String pName);
+
+	/**
+	 * Method called when the author of the drawing has been read
+	 * @param pAuthor, the author of the drawing
+	 */
+	void setAuthor(String pAuthor);
+
+	/**
+	 * Method called for every shape in the order they appear in the drawing
+	 * @param pShape, the shape
+	 */
+	void addShape(Shape pShape);
+}
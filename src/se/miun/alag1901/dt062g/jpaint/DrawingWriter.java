@@ -0,0 +1,214 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntConsumer;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+* <h1>DrawingWriter</h1>
+* Class for writing a drawing one shape at a time with a StAX writer. The output
+* is the same as the formatted output of the JAXB marshaller used by FileHandler.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.2
+* @since   2026-10-18
+*/
+public class DrawingWriter implements Closeable {
+	private static final XMLOutputFactory XML = XMLOutputFactory.newInstance();
+
+	private final Writer out;
+	private final XMLStreamWriter writer;
+
+	/**
+	 * Constructor, writes the start of the drawing
+	 * @param out, the stream to write to, closed by close
+	 * @param name, the name of the drawing, or null to leave it out
+	 * @param author, the author of the drawing, or null to leave it out
+	 * @throws IOException
+	 */
+	public DrawingWriter(OutputStream out, String name, String author) throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		// the declaration is written by hand since StAX cannot write standalone
+		this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+
+		try {
+			writer = XML.createXMLStreamWriter(this.out);
+			writer.writeStartElement("drawing");
+			writeElement(1, "name", name);
+			writeElement(1, "author", author);
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Method for writing a whole drawing to a stream
+	 * @param drawing, the drawing to write
+	 * @param out, the stream to write to, closed when done
+	 * @throws IOException
+	 */
+	public static void write(Drawing drawing, OutputStream out) throws IOException {
+		write(drawing, out, null);
+	}
+
+	/**
+	 * Method for writing a whole drawing to a stream, telling how far it has come
+	 * @param drawing, the drawing to write
+	 * @param out, the stream to write to, closed when done
+	 * @param progress, called with the number of shapes written after every shape, or null
+	 * @throws IOException
+	 */
+	public static void write(Drawing drawing, OutputStream out, IntConsumer progress) throws IOException {
+		try(DrawingWriter writer = new DrawingWriter(out, drawing.getName(), drawing.getAuthor())) {
+			int[] written = { 0 };
+			drawing.forEachShape(shape -> {
+				try {
+					writer.writeShape(shape);
+					if(progress != null) {
+						progress.accept(++written[0]);
+					}
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Method for writing the next shape of the drawing
+	 * @param shape, the shape to write
+	 * @throws IOException
+	 */
+	public void writeShape(Shape shape) throws IOException {
+		try {
+			indent(1);
+			writer.writeStartElement("shape");
+			writer.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+			writer.writeAttribute("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type", typeOf(shape));
+			writeElement(2, "color", shape.getColor());
+			if(shape instanceof Stroke) {
+				// the points are written as one list, followed by the width
+				Stroke stroke = (Stroke)shape;
+				StringBuilder path = new StringBuilder();
+				for(int p = 0; p < stroke.getPointCount(); ++p) {
+					path.append(p == 0 ? "" : " ").append(printFloat((float)stroke.getPointX(p)));
+					path.append(' ').append(printFloat((float)stroke.getPointY(p)));
+				}
+				writeElement(2, "path", path.toString());
+				writeElement(2, "width", printFloat((float)stroke.getWidth()));
+			} else {
+				for(int p = 0; p < shape.getPointCount(); ++p) {
+					indent(2);
+					writer.writeStartElement("point");
+					writeElement(3, "x", printDouble(shape.getPointX(p)));
+					writeElement(3, "y", printDouble(shape.getPointY(p)));
+					indent(2);
+					writer.writeEndElement();
+				}
+			}
+			indent(1);
+			writer.writeEndElement();
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Method for ending the drawing and closing the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			indent(0);
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+			out.write("\n");
+		} catch(XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Method for getting the xsi:type of a shape, the name of its class starting
+	 * with a lower case letter as JAXB does
+	 * @param shape, the shape
+	 * @return the type
+	 */
+	static String typeOf(Shape shape) {
+		String name = shape.getClass().getSimpleName();
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+
+	/**
+	 * Method for writing a double as xs:double
+	 * @param value, the value
+	 * @return the text
+	 */
+	private static String printDouble(double value) {
+		if(value == Double.POSITIVE_INFINITY) {
+			return "INF";
+		} else if(value == Double.NEGATIVE_INFINITY) {
+			return "-INF";
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Method for writing a float as xs:float
+	 * @param value, the value
+	 * @return the text
+	 */
+	private static String printFloat(float value) {
+		if(value == Float.POSITIVE_INFINITY) {
+			return "INF";
+		} else if(value == Float.NEGATIVE_INFINITY) {
+			return "-INF";
+		}
+		return Float.toString(value);
+	}
+
+	/**
+	 * Method for writing an indented element holding only text
+	 * @param level, the level of indentation
+	 * @param name, the name of the element
+	 * @param text, the text, or null to leave the element out
+	 * @throws XMLStreamException
+	 */
+	private void writeElement(int level, String name, String text) throws XMLStreamException {
+		if(text == null) {
+			return;
+		}
+		indent(level);
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Method for starting a new line with indentation
+	 * @param level, the level of indentation
+	 * @throws XMLStreamException
+	 */
+	private void indent(int level) throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for(int i = 0; i < level; ++i) {
+			writer.writeCharacters("    ");
+		}
+	}
+}
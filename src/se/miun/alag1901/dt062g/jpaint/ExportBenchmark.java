@@ -0,0 +1,91 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+* <h1>ExportBenchmark</h1>
+* Class for measuring how fast TileRenderer exports a drawing to an image with
+* different numbers of threads, compared to drawing the whole drawing on a single
+* thread. Every rendered image is checked to be identical to the single threaded one.
+* Usage: ExportBenchmark [number of shapes] [images] [tile size]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class ExportBenchmark {
+	private static final int WIDTH = 1600, HEIGHT = 1200;
+
+	public static void main(String[] args) {
+		int shapes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int images = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : TileRenderer.DEFAULT_TILE_SIZE;
+
+		Random random = new Random(1);
+		String[] colors = { "#000000", "#ff0000", "#00ff00", "#0000ff", "#ffe0bd" };
+		Drawing drawing = new Drawing("Benchmark", "ExportBenchmark");
+		for(int i = 0; i < shapes; ++i) {
+			int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+			Shape shape = i % 10 == 0 ? new Rectangle(x, y, colors[i % colors.length])
+									  : new Circle(x, y, colors[i % colors.length]);
+			shape.addPoint(x + 1 + random.nextInt(40), y + 1 + random.nextInt(40));
+			drawing.addShape(shape);
+		}
+
+		BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		// first round warms up
+		drawSerially(drawing, expected);
+		long start = System.nanoTime();
+		for(int i = 0; i < images; ++i) {
+			drawSerially(drawing, expected);
+		}
+		double serial = (System.nanoTime() - start) / 1e6 / images;
+		int[] expectedPixels = expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+
+		System.out.printf("%d shapes, %dx%d, %dx%d tiles%n%8s %10s %10s %8s%n", shapes, WIDTH, HEIGHT,
+						  tileSize, tileSize, "threads", "ms/image", "images/s", "speedup");
+		System.out.printf("%8s %10.1f %10.2f %8.2f%n", "draw", serial, 1000 / serial, 1.0);
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				TileRenderer renderer = new TileRenderer(pool, tileSize);
+				BufferedImage image = renderer.render(drawing, WIDTH, HEIGHT, Color.WHITE);
+				if(!Arrays.equals(expectedPixels, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH))) {
+					throw new IllegalStateException("tiles differ from drawing the whole drawing");
+				}
+
+				start = System.nanoTime();
+				for(int i = 0; i < images; ++i) {
+					renderer.render(drawing, WIDTH, HEIGHT, Color.WHITE);
+				}
+				double time = (System.nanoTime() - start) / 1e6 / images;
+				System.out.printf("%8d %10.1f %10.2f %8.2f%n", threads, time, 1000 / time, serial / time);
+			} finally {
+				pool.shutdown();
+			}
+			if(threads == processors) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Method for drawing a whole drawing into an image on the current thread
+	 * @param drawing, the drawing to draw
+	 * @param image, the image to draw into
+	 */
+	private static void drawSerially(Drawing drawing, BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, WIDTH, HEIGHT);
+		drawing.draw(g);
+		g.dispose();
+	}
+}
@@ -1,22 +1,106 @@
 package se.miun.alag1901.dt062g.jpaint;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 
 /**
 * <h1>File Handler</h1>
 * Class for saving Drawing objects to file using XML format.
+* The JAXBContext is created once, on first use, and every thread reuses its own
+* Marshaller and Unmarshaller since those are not thread safe. If the context
+* cannot be created the JAXBException is reported by the method using it, and
+* creating it is tried again the next time.
+* Large drawings can be streamed to a DrawingSink shape by shape instead.
+* Drawings can also be saved in the compact binary format of BinaryDrawing, the
+* format of a file is detected when it is loaded.
+* <p>
+* The save method writes to a temporary file next to the target and renames it
+* when done, so the file saved to always holds either the old or the whole new
+* drawing, and errors are thrown to the caller. It is meant to be called from a
+* background thread with a snapshot of the drawing.
+* Drawings can also be read from any stream, such as one from the server, one
+* shape at a time while the stream is received.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.1
+* @version 1.6
 * @since   2020-12-20
 */
 public class FileHandler {
 
+	private static volatile JAXBContext context;
+
+	private static final ThreadLocal<Marshaller> MARSHALLER = new ThreadLocal<Marshaller>();
+	private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<Unmarshaller>();
+
+	/**
+	 * Method for getting the JAXBContext for the Drawing class, shared by all threads
+	 * and created the first time it is used
+	 * @return the context
+	 * @throws JAXBException if the context cannot be created
+	 */
+	public static JAXBContext getContext() throws JAXBException {
+		JAXBContext created = context;
+		if(created == null) {
+			synchronized(FileHandler.class) {
+				created = context;
+				if(created == null) {
+					created = JAXBContext.newInstance(Drawing.class);
+					context = created;
+				}
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Method for getting the marshaller of the calling thread
+	 * @return the marshaller
+	 * @throws JAXBException if the marshaller cannot be created
+	 */
+	private static Marshaller getMarshaller() throws JAXBException {
+		Marshaller marshaller = MARSHALLER.get();
+		if(marshaller == null) {
+			marshaller = getContext().createMarshaller();
+			// use indentation for greater readability
+			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+			MARSHALLER.set(marshaller);
+		}
+		return marshaller;
+	}
+
+	/**
+	 * Method for getting the unmarshaller of the calling thread
+	 * @return the unmarshaller
+	 * @throws JAXBException if the unmarshaller cannot be created
+	 */
+	private static Unmarshaller getUnmarshaller() throws JAXBException {
+		Unmarshaller unmarshaller = UNMARSHALLER.get();
+		if(unmarshaller == null) {
+			unmarshaller = getContext().createUnmarshaller();
+			UNMARSHALLER.set(unmarshaller);
+		}
+		return unmarshaller;
+	}
+
 	/**
 	 * Method for saving Drawing object to file
 	 * @param drawing, the drawing to be saved
@@ -30,15 +114,8 @@ public class FileHandler {
 		
 		// handle JAXBExceptions
 		try {
-			// create new context and marshaller for Drawing class
-			JAXBContext context = JAXBContext.newInstance(Drawing.class);		
-			Marshaller marshaller = context.createMarshaller();
-	
-			// use indentation for greater readability
-			marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-	
-			// output to file
-			marshaller.marshal(drawing, new File(fileName));
+			// output to file with the marshaller of this thread
+			getMarshaller().marshal(drawing, new File(fileName));
 		} catch(JAXBException je) {
 			System.out.println("failed to save, exception in FileHandler: " + je.getMessage());
 		}
@@ -65,12 +142,8 @@ public class FileHandler {
 		
 		// handle exceptions while attempting to read file
 		try {
-			// create new context and unmarshaller for Drawing class
-			JAXBContext context = JAXBContext.newInstance(Drawing.class);		
-			Unmarshaller unmarshaller = context.createUnmarshaller();
-			
-			// read drawing data from XML file
-			drawing = (Drawing)unmarshaller.unmarshal(new File(fileName));
+			// read drawing data from XML file with the unmarshaller of this thread
+			drawing = (Drawing)getUnmarshaller().unmarshal(new File(fileName));
 		} catch(JAXBException je) {
 			System.out.println("file not read, exception in FileHandler: " + je.getMessage());
 		} catch (IllegalArgumentException ie) {
@@ -78,4 +151,142 @@ public class FileHandler {
 		}
 		return drawing;
 	}
+
+	/**
+	 * Method for loading a drawing from an XML file one shape at a time, without
+	 * keeping the whole drawing in memory
+	 * @param fileName, the name of the XML file
+	 * @param sink, the sink receiving the parts of the drawing as they are read
+	 * @return true if the whole file was read, false if not
+	 */
+	public static boolean loadFromXML(String fileName, DrawingSink sink) {
+		try(InputStream in = new BufferedInputStream(new FileInputStream(fileName))) {
+			DrawingReader.read(in, sink);
+			return true;
+		} catch(IOException | XMLStreamException e) {
+			System.out.println("file not read, exception in FileHandler: " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Method for saving a drawing to file in the binary format
+	 * @param drawing, the drawing to be saved
+	 * @param fileName, the name of the savefile, .jpb is appended if missing
+	 */
+	public static void saveToBinary(Drawing drawing, String fileName) {
+		if(!fileName.endsWith(BinaryDrawing.EXTENSION)) {
+			fileName = fileName + BinaryDrawing.EXTENSION;
+		}
+		
+		try(OutputStream out = new FileOutputStream(fileName)) {
+			BinaryDrawing.write(drawing, out);
+		} catch(IOException e) {
+			System.out.println("failed to save, exception in FileHandler: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Method for saving a drawing to file, in the binary format if the file name
+	 * ends with .jpb and as XML otherwise
+	 * @param drawing, the drawing to be saved
+	 * @param fileName, the name of the savefile
+	 */
+	public static void saveToFile(Drawing drawing, String fileName) {
+		if(fileName.endsWith(BinaryDrawing.EXTENSION)) {
+			saveToBinary(drawing, fileName);
+		} else {
+			saveToXML(drawing, fileName);
+		}
+	}
+
+	/**
+	 * Method for saving a drawing to file, in the binary format if the file name
+	 * ends with .jpb and as XML otherwise, replacing the file only once the whole
+	 * drawing is written
+	 * @param drawing, the drawing to be saved, which must not change meanwhile
+	 * @param fileName, the name of the savefile, .xml is appended to XML files if missing
+	 * @param progress, called with the number of shapes written after every shape, or null
+	 * @return the name of the file saved to
+	 * @throws IOException if the file could not be written, it is left as it was
+	 */
+	public static String save(Drawing drawing, String fileName, IntConsumer progress) throws IOException {
+		boolean binary = fileName.endsWith(BinaryDrawing.EXTENSION);
+		if(!binary && !fileName.endsWith(".xml")) {
+			fileName = fileName + ".xml";
+		}
+		
+		// the temporary file is in the same directory so it can be renamed to the target
+		Path target = Paths.get(fileName).toAbsolutePath();
+		String prefix = "." + target.getFileName();
+		Path temp = Files.createTempFile(target.getParent(), prefix, ".tmp");
+		try {
+			try(OutputStream out = Files.newOutputStream(temp)) {
+				if(binary) {
+					BinaryDrawing.write(drawing.getName(), drawing.getAuthor(), drawing.getShapes(), out, progress);
+				} else {
+					DrawingWriter.write(drawing, out, progress);
+				}
+			}
+			// make sure the content is on disk before the file is renamed
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return fileName;
+	}
+
+	/**
+	 * Method for loading a drawing from a file in either format
+	 * @param fileName, the name of the file
+	 * @return the drawing, or null if the file could not be read
+	 */
+	public static Drawing loadFromFile(String fileName) {
+		Drawing drawing = new Drawing();
+		return loadFromFile(fileName, drawing) ? drawing : null;
+	}
+
+	/**
+	 * Method for loading a drawing from a file in either format one shape at a time
+	 * @param fileName, the name of the file
+	 * @param sink, the sink receiving the parts of the drawing as they are read
+	 * @return true if the whole file was read, false if not
+	 */
+	public static boolean loadFromFile(String fileName, DrawingSink sink) {
+		try(InputStream in = new BufferedInputStream(new FileInputStream(fileName), 64 * 1024)) {
+			load(in, sink);
+			return true;
+		} catch(IOException | XMLStreamException e) {
+			System.out.println("file not read, exception in FileHandler: " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Method for reading a drawing in either format from a stream one shape at a
+	 * time, the shapes are passed on as soon as they have been received
+	 * @param in, the stream to read from, it is not closed
+	 * @param sink, the sink receiving the parts of the drawing as they are read
+	 * @throws IOException if the stream could not be read
+	 * @throws XMLStreamException if the stream holds neither format
+	 */
+	public static void load(InputStream in, DrawingSink sink) throws IOException, XMLStreamException {
+		// the format is detected by looking at the first bytes
+		if(!in.markSupported()) {
+			in = new BufferedInputStream(in, 64 * 1024);
+		}
+		if(BinaryDrawing.isBinary(in)) {
+			BinaryDrawing.read(in, sink);
+		} else {
+			DrawingReader.read(in, sink);
+		}
+	}
 }
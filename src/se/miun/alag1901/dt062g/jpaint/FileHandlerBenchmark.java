@@ -0,0 +1,81 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+/**
+* <h1>FileHandlerBenchmark</h1>
+* Class for measuring the latency of saving and loading a drawing with FileHandler,
+* compared to creating a new JAXBContext on every call as FileHandler used to do.
+* Every method is warmed up before the average time per call is printed.
+* Usage: FileHandlerBenchmark [drawing file] [repetitions]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class FileHandlerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = args.length > 0 ? args[0] : "xml/Mona Lisa.xml";
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		Drawing drawing = FileHandler.loadFromXML(fileName);
+		if(drawing == null) {
+			System.out.println("Failed to load " + fileName);
+			return;
+		}
+		File saveFile = Files.createTempFile("jpaint-benchmark", ".xml").toFile();
+
+		try {
+			Runnable[] methods = {
+				() -> {
+					try {
+						JAXBContext.newInstance(Drawing.class).createUnmarshaller().unmarshal(new File(fileName));
+					} catch(Exception e) {
+						throw new RuntimeException(e);
+					}
+				},
+				() -> FileHandler.loadFromXML(fileName),
+				() -> {
+					try {
+						Marshaller marshaller = JAXBContext.newInstance(Drawing.class).createMarshaller();
+						marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+						marshaller.marshal(drawing, saveFile);
+					} catch(Exception e) {
+						throw new RuntimeException(e);
+					}
+				},
+				() -> FileHandler.saveToXML(drawing, saveFile.getPath())
+			};
+			String[] names = { "load, new context", "load, shared context",
+							   "save, new context", "save, shared context" };
+
+			System.out.printf("%22s %14s%n", "method", "ms/call");
+			for(int i = 0; i < methods.length; ++i) {
+				// first round warms up
+				measure(methods[i], repetitions);
+				System.out.printf("%22s %14.3f%n", names[i], measure(methods[i], repetitions));
+			}
+		} finally {
+			saveFile.delete();
+		}
+	}
+
+	/**
+	 * Method for running a method a number of times
+	 * @param method, the method to run
+	 * @param repetitions, the number of calls
+	 * @return the average time per call in milliseconds
+	 */
+	private static double measure(Runnable method, int repetitions) {
+		long start = System.nanoTime();
+		for(int i = 0; i < repetitions; ++i) {
+			method.run();
+		}
+		return (System.nanoTime() - start) / 1e6 / repetitions;
+	}
+}
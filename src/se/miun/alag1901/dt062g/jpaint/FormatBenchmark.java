@@ -0,0 +1,88 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+* <h1>FormatBenchmark</h1>
+* Class for comparing the file size and the save and load times of the XML and
+* the binary .jpb formats. A drawing made of small circles, like the ones left by
+* the paintbrush, is saved and loaded with FileHandler in both formats.
+* Usage: FormatBenchmark [number of shapes] [repetitions]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class FormatBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int shapes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Drawing drawing = createDrawing(shapes);
+		File xmlFile = File.createTempFile("jpaint-benchmark", ".xml");
+		File binaryFile = File.createTempFile("jpaint-benchmark", BinaryDrawing.EXTENSION);
+
+		try {
+			System.out.printf("%d shapes%n%8s %12s %10s %10s%n", shapes, "format", "bytes", "save ms", "load ms");
+			for(File file : new File[] { xmlFile, binaryFile }) {
+				String fileName = file.getPath();
+				// first round warms up
+				measure(drawing, fileName, 1);
+				double[] result = measure(drawing, fileName, repetitions);
+				System.out.printf("%8s %12d %10.1f %10.1f%n", fileName.substring(fileName.lastIndexOf('.') + 1),
+								  file.length(), result[0], result[1]);
+			}
+		} finally {
+			xmlFile.delete();
+			binaryFile.delete();
+		}
+	}
+
+	/**
+	 * Method for creating a drawing of random brush strokes
+	 * @param shapes, the number of shapes
+	 * @return the drawing
+	 */
+	private static Drawing createDrawing(int shapes) {
+		Random random = new Random(1);
+		String[] colors = { "#000000", "#ff0000", "#00ff00", "#0000ff", "#ffe0bd" };
+		Drawing drawing = new Drawing("Benchmark", "FormatBenchmark");
+
+		int x = 400, y = 300;
+		for(int i = 0; i < shapes; ++i) {
+			// move a few pixels at a time as the mouse would
+			x = Math.floorMod(x + random.nextInt(9) - 4, 800);
+			y = Math.floorMod(y + random.nextInt(9) - 4, 600);
+			Circle circle = new Circle(x, y, colors[(i / 1000) % colors.length]);
+			circle.addPoint(x + 8, y + 8);
+			drawing.addShape(circle);
+		}
+		return drawing;
+	}
+
+	/**
+	 * Method for saving and loading a drawing a number of times
+	 * @param drawing, the drawing to save
+	 * @param fileName, the name of the file, the extension selects the format
+	 * @param repetitions, the number of saves and loads
+	 * @return the average save and load times in milliseconds
+	 */
+	private static double[] measure(Drawing drawing, String fileName, int repetitions) {
+		long saveTime = 0, loadTime = 0;
+		for(int i = 0; i < repetitions; ++i) {
+			long start = System.nanoTime();
+			FileHandler.saveToFile(drawing, fileName);
+			saveTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Drawing loaded = FileHandler.loadFromFile(fileName);
+			loadTime += System.nanoTime() - start;
+			if(loaded == null || loaded.getSize() != drawing.getSize()) {
+				throw new IllegalStateException("failed to load " + fileName);
+			}
+		}
+		return new double[] { saveTime / 1e6 / repetitions, loadTime / 1e6 / repetitions };
+	}
+}
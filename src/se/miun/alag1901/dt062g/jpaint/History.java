@@ -0,0 +1,212 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+* <h1>History</h1>
+* Class keeping track of the steps that can be undone and redone in a drawing.
+* A step is everything added between two calls to record, such as a shape or a
+* whole paintbrush stroke, and is kept as the number of shapes the drawing had
+* after it. Undoing a step removes the shapes added since the step before, and
+* keeps them so redoing it can add them back.
+* <p>
+* The history is limited in two ways, set with the system properties
+* jpaint.history.limit, the number of steps kept, and jpaint.history.points, the
+* number of points of undone shapes kept for redo. The oldest steps are forgotten
+* first, and the steps furthest from being redone are forgotten first.
+* <p>
+* Shapes that are not steps, such as those of a drawing still being received,
+* are inserted below the steps so the steps can still be undone.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.3
+* @since   2026-10-18
+*/
+public class History {
+	public static final int DEFAULT_LIMIT = Integer.getInteger("jpaint.history.limit", 1000);
+	public static final int DEFAULT_POINT_LIMIT = Integer.getInteger("jpaint.history.points", 1000000);
+
+	// the size of the drawing after every step, the oldest at first
+	private final int[] marks;
+	private final int pointLimit;
+	private int first = 0;
+	private int count = 0;
+	// the number of steps done, the steps after them can be redone
+	private int position = 0;
+	// the size of the drawing before the oldest step
+	private int base = 0;
+
+	// the undone shapes in drawing order, the next one to redo first
+	private final ArrayDeque<Shape> undone = new ArrayDeque<Shape>();
+	private long undonePoints = 0;
+
+	/**
+	 * Constructor using the default limits
+	 */
+	public History() {
+		this(DEFAULT_LIMIT, DEFAULT_POINT_LIMIT);
+	}
+
+	/**
+	 * Constructor
+	 * @param limit, the number of steps to keep
+	 * @param pointLimit, the number of points of undone shapes to keep for redo
+	 */
+	public History(int limit, int pointLimit) {
+		if(limit <= 0) {
+			throw new IllegalArgumentException("history limit must be positive: " + limit);
+		}
+		marks = new int[limit];
+		this.pointLimit = pointLimit;
+	}
+
+	/**
+	 * Method for forgetting every step, as when another drawing is shown
+	 * @param size, the number of shapes of the drawing, which cannot be undone
+	 */
+	public void reset(int size) {
+		first = 0;
+		count = 0;
+		position = 0;
+		base = size;
+		clearUndone();
+	}
+
+	/**
+	 * Method for making the shapes added since the last step a step of its own,
+	 * which forgets the steps that could be redone
+	 * @param size, the number of shapes of the drawing now
+	 */
+	public void record(int size) {
+		if(size <= getMark(position)) {
+			// nothing was added
+			return;
+		}
+
+		count = position;
+		clearUndone();
+		if(count == marks.length) {
+			// the oldest step can no longer be undone
+			base = marks[first];
+			first = (first + 1) % marks.length;
+			--count;
+			--position;
+		}
+		marks[(first + count) % marks.length] = size;
+		++count;
+		++position;
+	}
+
+	/**
+	 * Method for adding shapes that cannot be undone below the shapes of the steps,
+	 * which are moved up above them without being removed from the drawing
+	 * @param drawing, the drawing the steps were done to
+	 * @param shapes, the shapes to add
+	 * @return the index of the first shape added
+	 */
+	public int insert(Drawing drawing, List<? extends Shape> shapes) {
+		int from = Math.min(base, drawing.getSize());
+		drawing.insertShapes(from, shapes);
+
+		base += shapes.size();
+		for(int i = 0; i < count; ++i) {
+			marks[(first + i) % marks.length] += shapes.size();
+		}
+		return from;
+	}
+
+	/**
+	 * Method for checking if there is a step to undo
+	 * @return true if undo can be called
+	 */
+	public boolean canUndo() {
+		return position > 0;
+	}
+
+	/**
+	 * Method for checking if there is a step to redo
+	 * @return true if redo can be called
+	 */
+	public boolean canRedo() {
+		return position < count;
+	}
+
+	/**
+	 * Method for getting the number of shapes the drawing will have after undo
+	 * @return the number of shapes
+	 */
+	public int getUndoSize() {
+		return getMark(position - 1);
+	}
+
+	/**
+	 * Method for undoing the last step done
+	 * @param drawing, the drawing the steps were done to
+	 * @return the number of shapes removed
+	 */
+	public int undo(Drawing drawing) {
+		if(!canUndo()) {
+			return 0;
+		}
+
+		List<Shape> shapes = drawing.getShapes();
+		int size = shapes.size();
+		int target = Math.min(getUndoSize(), size);
+		for(int i = size - 1; i >= target; --i) {
+			// shapes of a compact drawing are returned as copies
+			Shape shape = shapes.get(i);
+			undone.addFirst(shape);
+			undonePoints += shape.getPointCount();
+		}
+		drawing.deleteLast(size - target);
+		--position;
+
+		// forget the steps furthest from being redone until the rest fit
+		while(undonePoints > pointLimit && count > position) {
+			for(int i = getMark(count) - getMark(count - 1); i > 0 && !undone.isEmpty(); --i) {
+				undonePoints -= undone.removeLast().getPointCount();
+			}
+			--count;
+		}
+		return size - target;
+	}
+
+	/**
+	 * Method for redoing the last step undone
+	 * @param drawing, the drawing the steps were done to
+	 * @return the number of shapes added back
+	 */
+	public int redo(Drawing drawing) {
+		if(!canRedo()) {
+			return 0;
+		}
+
+		int added = 0;
+		for(int i = getMark(position + 1) - getMark(position); i > 0 && !undone.isEmpty(); --i) {
+			Shape shape = undone.removeFirst();
+			undonePoints -= shape.getPointCount();
+			drawing.addShape(shape);
+			++added;
+		}
+		++position;
+		return added;
+	}
+
+	/**
+	 * Method for getting the size of the drawing after a step
+	 * @param step, the number of steps done, 0 for the size before the oldest step
+	 * @return the number of shapes
+	 */
+	private int getMark(int step) {
+		return step == 0 ? base : marks[(first + step - 1) % marks.length];
+	}
+
+	/**
+	 * Method for forgetting the undone shapes
+	 */
+	private void clearUndone() {
+		undone.clear();
+		undonePoints = 0;
+	}
+}
@@ -8,25 +8,49 @@ import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.border.BevelBorder;
 
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 /**
 * <h1>JPaintInterface</h1>
 * Class for managing GUI to control the program
+* <p>
+* Drawings are saved in the background from a snapshot, so drawing can go on
+* while a large drawing is written. Saves requested while another is running
+* wait for it, and only the latest of those to the same file is written.
+* <p>
+* Drawings from the server are shown while they are received, the shapes are
+* added to the drawing panel in batches as they are read. Shapes received while
+* the mouse is dragged wait until it is released, so the shape being drawn stays
+* the last one.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.3
+* @version 1.12
 * @since   2021-01-10
 */
 public class JPaintInterface extends JFrame {
 	private static final long serialVersionUID = 1;
 	private JPaintInterface window = this;
 	private DrawingPanel drawingPanel;
-	private LinkedList<Integer> nrToUndo;
+	// drops the mouse positions of paintbrush strokes that are not needed
+	private StrokeSimplifier simplifier = new StrokeSimplifier();
 	
 	private final Client client;
 	
+	// the save running in the background, the saves waiting for it by file name
+	private FileSaveWorker saveWorker;
+	private final Map<String, FileSaveWorker> pendingSaves = new LinkedHashMap<String, FileSaveWorker>();
+	// the drawing being received from the server, and if a shape is being drawn meanwhile
+	private FileFetchWorker fetchWorker;
+	private boolean dragging = false;
+	// the progress of saves and loads in the background
+	private JLabel fileStatus;
+	
 	/**
 	 * Default constructor
 	 */
@@ -34,7 +58,6 @@ public class JPaintInterface extends JFrame {
 		super("JPaint");
 
 		this.client = client;
-		this.nrToUndo = new LinkedList<Integer>();
 
 		// set window icon image
 		ImageIcon icon = new ImageIcon("jpaint_icon.png");
@@ -104,7 +127,7 @@ public class JPaintInterface extends JFrame {
 			
 			if(fileName != null) {
 				// save drawing to file
-				FileHandler.saveToXML(drawingPanel.getDrawing(), fileName);
+				saveInBackground(fileName, false);
 			}			
 		});
 		
@@ -117,7 +140,7 @@ public class JPaintInterface extends JFrame {
 			String fileName = JOptionPane.showInputDialog(null, "Enter file name:", ".xml");
 			
 			if(fileName != null) {
-				Drawing loadedDrawing = FileHandler.loadFromXML(fileName);
+				Drawing loadedDrawing = FileHandler.loadFromFile(fileName);
 				
 				if(loadedDrawing != null) {
 					// set the loaded drawing if no previous drawing exists, otherwise add it
@@ -144,9 +167,10 @@ public class JPaintInterface extends JFrame {
 
 			String info = (name == null || name.isBlank() ? "[unnamed painting]" : name) + " by "
 						+ (author == null || author.isBlank() ? "[unnamned author]" : author)
-					 	+ "\nNumber of shapes: " + drawing.getShapes().size()
+					 	+ "\nNumber of shapes: " + drawing.getSize()
 					 	+ "\nTotal area: " + drawing.getTotalArea()
-					 	+ "\nTotal circumference: " + drawing.getTotalCircumference(); 
+					 	+ "\nTotal circumference: " + drawing.getTotalCircumference()
+					 	+ "\nPaintbrush positions dropped: " + simplifier.getRemoved() + " of " + simplifier.getReceived();
 			JOptionPane.showMessageDialog(null, info, "Info", JOptionPane.INFORMATION_MESSAGE);
 		});
 		
@@ -170,14 +194,65 @@ public class JPaintInterface extends JFrame {
 		menuItem.setMnemonic(KeyEvent.VK_U);
 		menu.add(menuItem);
 		
+		// a brushstroke is undone as a single step
+		menuItem.addActionListener(e -> drawingPanel.undo());
+		
+		// redo last undone shape
+		menuItem = new JMenuItem("Redo");
+		menuItem.setMnemonic(KeyEvent.VK_R);
+		menu.add(menuItem);
+		
+		menuItem.addActionListener(e -> drawingPanel.redo());
+		
+		menuItem = new JMenuItem("Merge brush circles");
+		menuItem.setMnemonic(KeyEvent.VK_M);
+		menu.add(menuItem);
+
+		// replace the circles of the old paintbrush with strokes
 		menuItem.addActionListener(e -> {
-			if(!nrToUndo.isEmpty()) {
-				// a brushstroke is considered a single shape
-				drawingPanel.undo(nrToUndo.pop());
+			int removed = drawingPanel.getDrawing().mergeBrushCircles();
+			if(removed > 0) {
+				// the shapes added by earlier actions are gone
+				drawingPanel.clearHistory();
 				drawingPanel.repaint();
 			}
+			JOptionPane.showMessageDialog(null, removed + " shapes merged into strokes");
 		});
-		
+
+		menuItem = new JMenuItem("Simplify strokes...");
+		menuItem.setMnemonic(KeyEvent.VK_S);
+		menu.add(menuItem);
+
+		// remove the points of strokes that hardly change them
+		menuItem.addActionListener(e -> {
+			String input = JOptionPane.showInputDialog(null, "Tolerance in pixels:", StrokeSimplifier.DEFAULT_TOLERANCE);
+			if(input == null) {
+				return;
+			}
+
+			double tolerance;
+			try {
+				tolerance = Double.parseDouble(input);
+			} catch(NumberFormatException nfe) {
+				JOptionPane.showMessageDialog(null, "Invalid tolerance");
+				return;
+			}
+
+			Drawing drawing = drawingPanel.getDrawing();
+			long points = drawing.getPointCount();
+			long bytes = StrokeSimplifier.getSavedSize(drawing, false);
+			if(drawing.simplifyStrokes(tolerance) > 0) {
+				// the steps and undone shapes still hold the strokes as they were
+				drawingPanel.clearHistory();
+			}
+			long savedBytes = StrokeSimplifier.getSavedSize(drawing, false);
+			drawingPanel.repaint();
+
+			JOptionPane.showMessageDialog(null, String.format("Points: %d -> %d (%.1f%% fewer)\nXML size: %d -> %d bytes (%.1f%% smaller)",
+					points, drawing.getPointCount(), StrokeSimplifier.percentLess(points, drawing.getPointCount()),
+					bytes, savedBytes, StrokeSimplifier.percentLess(bytes, savedBytes)));
+		});
+
 		menuItem = new JMenuItem("Name...");
 		menuItem.setMnemonic(KeyEvent.VK_N);
 		menu.add(menuItem);
@@ -229,9 +304,8 @@ public class JPaintInterface extends JFrame {
 														  suggestedName);
 			
 			if(fileName != null) {
-				// save drawing locally before sending to server
-				FileHandler.saveToXML(drawingPanel.getDrawing(), fileName);
-				new SaveWorker(fileName).execute();
+				// save drawing locally before sending to server, which is done when the save is
+				saveInBackground(fileName, true);
 			}
 		});					
 		menuBar.add(menu);
@@ -302,6 +376,10 @@ public class JPaintInterface extends JFrame {
 		// default coordinate display before mouse movements
 		JLabel coordinateDisplay = new JLabel("Coordinates:");
 		statusBar.add(coordinateDisplay, BorderLayout.LINE_START);
+		
+		// progress of saves and loads in the background
+		fileStatus = new JLabel("", SwingConstants.CENTER);
+		statusBar.add(fileStatus, BorderLayout.CENTER);
 
 		// panel for displaying user selected color
 		JPanel selectedColor = new JPanel();
@@ -344,7 +422,6 @@ public class JPaintInterface extends JFrame {
 			private Drawing drawing;
 			private Shape shape;
 			private String color;
-			private int shapesAdded = 0;
 			
 			public void mousePressed(MouseEvent me) {
 				// get string representation of color
@@ -357,46 +434,55 @@ public class JPaintInterface extends JFrame {
 				} else if(shapeSelector.getSelectedItem().toString() == "Rectangle") {
 					shape = new Rectangle(me.getX(), me.getY(), color);
 				} else {
-					// since this bit was voluntary i took the freedom to play around and add a
-					// crude "paintbrush" feature
-					shape = new Circle(me.getX(), me.getY(), color);
-					shape.addPoint(me.getX() + 8, me.getY() + 8);
+					// the paintbrush paints one stroke for as long as the mouse is dragged
+					shape = new Stroke(me.getX(), me.getY(), color, Stroke.BRUSH_WIDTH);
+					simplifier.begin((Stroke)shape);
 				}
-				++shapesAdded;
 				drawing.addShape(shape);
+				dragging = true;
+				
+				drawingPanel.beginDrag();
+				drawingPanel.repaintArea(shape.getBounds());
 			}
 			
 			// update shape as user drags the mouse
 			public void mouseDragged(MouseEvent me) {
 				if(shapeSelector.getSelectedItem().toString() != "Paintbrush") {
+					// repaint where the shape was and where it is now
+					java.awt.Rectangle before = shape.getBounds();
 					shape.addPoint(me.getX(), me.getY());
-					drawingPanel.repaint();	
+					drawingPanel.repaintArea(before.union(shape.getBounds()));
 				} else {
-					shape = new Circle(me.getX(), me.getY(), color);
-					shape.addPoint(me.getX() + 8, me.getY() + 8);
-					
-					// add circle and repaint on every mouse drag
-					drawing.addShape(shape);
-					++shapesAdded;
-					drawingPanel.repaint();
+					extendStroke(me);
 				}
 			}
 			
 			public void mouseReleased(MouseEvent me) {
 				if(shapeSelector.getSelectedItem().toString() != "Paintbrush") {
+					java.awt.Rectangle before = shape.getBounds();
 					shape.addPoint(me.getX(), me.getY());
-					drawingPanel.repaint();	
+					drawingPanel.repaintArea(before.union(shape.getBounds()));
 				} else {
-					shape = new Circle(me.getX(), me.getY(), color);
-					shape.addPoint(me.getX() + 8, me.getY() + 8);
-					
-					drawing.addShape(shape);
-					++shapesAdded;
-					drawingPanel.repaint();
-					
-				}				
-				nrToUndo.addFirst(shapesAdded);
-				shapesAdded = 0;
+					extendStroke(me);
+				}
+				drawingPanel.endDrag();
+				drawingPanel.recordStep();
+				
+				// add the shapes received from the server while drawing
+				dragging = false;
+				if(fetchWorker != null) {
+					fetchWorker.addWaiting();
+				}
+			}
+
+			// add the mouse position to the stroke and repaint the new part of it
+			private void extendStroke(MouseEvent me) {
+				Stroke stroke = (Stroke)shape;
+				// the last point may be replaced by the new one
+				int from = Math.max(0, stroke.getPointCount() - 2);
+				java.awt.Rectangle before = stroke.getBounds(from);
+				simplifier.addPoint(me.getX(), me.getY());
+				drawingPanel.repaintArea(before.union(stroke.getBounds(from)));
 			}
 		}
 		
@@ -411,6 +497,41 @@ public class JPaintInterface extends JFrame {
 		window.add(statusBar, BorderLayout.SOUTH);
 	}
 	
+	/**
+	 * Method for saving the drawing as it is now to file in the background, after
+	 * the save already running if any
+	 * @param fileName, the name of the savefile
+	 * @param upload, true to send the file to the server once saved
+	 */
+	private void saveInBackground(String fileName, boolean upload) {
+		FileSaveWorker worker = new FileSaveWorker(drawingPanel.getDrawing().snapshot(), fileName, upload);
+		if(saveWorker == null) {
+			saveWorker = worker;
+			worker.execute();
+		} else {
+			// an older snapshot waiting for the same file is replaced, but is still sent to the server if asked
+			FileSaveWorker replaced = pendingSaves.remove(fileName);
+			if(replaced != null) {
+				worker.upload |= replaced.upload;
+			}
+			pendingSaves.put(fileName, worker);
+			fileStatus.setText("Saving " + saveWorker.fileName + "... (" + pendingSaves.size() + " waiting)");
+		}
+	}
+	
+	/**
+	 * Method for starting the first save waiting, if any
+	 */
+	private void startNextSave() {
+		saveWorker = null;
+		Iterator<FileSaveWorker> waiting = pendingSaves.values().iterator();
+		if(waiting.hasNext()) {
+			saveWorker = waiting.next();
+			waiting.remove();
+			saveWorker.execute();
+		}
+	}
+	
 	/**
 	 * Method for updating the window title according to the drawing name and author
 	 * Catches null values and changes them to blank strings
@@ -458,7 +579,12 @@ public class JPaintInterface extends JFrame {
 				        "Available drawings", JOptionPane.QUESTION_MESSAGE, null, fileList, fileList[0]);
 				    
 			    if(input != null) {
-				    new FileFetchWorker(input).execute();
+				    if(fetchWorker != null) {
+				    	// the drawing of the earlier load is replaced
+				    	fetchWorker.cancel(true);
+				    }
+				    fetchWorker = new FileFetchWorker(input);
+				    fetchWorker.execute();
 			    }
 			} catch(Exception e) {
 				e.printStackTrace();
@@ -468,36 +594,199 @@ public class JPaintInterface extends JFrame {
 
 	/**
 	* <h2>FileFetchWorker</h2>
-	* Implementation of SwingWorker for fetching an xml-file from server
+	* Implementation of SwingWorker for showing a drawing from the server while it
+	* is received. The shapes are read as soon as they arrive and published in
+	* batches, which are added to the drawing panel below anything drawn meanwhile.
+	* While the mouse is dragged the shapes wait, and the drawing received is not
+	* shown until the mouse is released, so it never replaces the drawing under a
+	* shape being drawn.
+	* The time until the first shape is shown and until the whole drawing is shown
+	* is printed when done.
 	*
 	* @author  Albin Ågren (alag1901)
-	* @version 1.0
+	* @version 1.3
 	* @since   2020-12-30
 	*/
-	public class FileFetchWorker extends SwingWorker<String, Void> {
+	public class FileFetchWorker extends SwingWorker<Integer, Shape> {
 		private String fileName;
+		private final long started = System.nanoTime();
+		private long firstShown = 0;
+		private int received = 0;
+		// set by the background thread before the first shape is published
+		private volatile String name = "";
+		private volatile String author = "";
+		
+		// the drawing shown, and the shapes waiting for the mouse to be released
+		private Drawing drawing;
+		private final List<Shape> waiting = new ArrayList<Shape>();
 		
 		public FileFetchWorker(String fileName) {
 			this.fileName = fileName;
 		}
 		
-		protected String doInBackground() {
-			return client.getFileFromServer(fileName);
+		protected Integer doInBackground() throws Exception {
+			int[] shapes = { 0 };
+			try(InputStream in = client.openFileFromServer(fileName)) {
+				FileHandler.load(in, new DrawingSink() {
+					public void setName(String pName) {
+						name = pName;
+					}
+					
+					public void setAuthor(String pAuthor) {
+						author = pAuthor;
+					}
+					
+					public void addShape(Shape pShape) {
+						if(isCancelled()) {
+							throw new CancellationException();
+						}
+						publish(pShape);
+						++shapes[0];
+					}
+				});
+			}
+			return shapes[0];
+		}
+		
+		protected void process(List<Shape> shapes) {
+			if(isCancelled()) {
+				return;
+			}
+			
+			received += shapes.size();
+			waiting.addAll(shapes);
+			if(!dragging) {
+				addWaiting();
+			}
+			fileStatus.setText("Loading " + fileName + "... " + received + " shapes");
+		}
+		
+		/**
+		 * Method for showing the drawing received, the first time it is called
+		 * @return false if the load was cancelled or the drawing has been replaced by another
+		 */
+		private boolean show() {
+			if(isCancelled()) {
+				return false;
+			}
+			if(drawing == null) {
+				// the history starts over once, with the drawing received
+				drawing = new Drawing(name, author);
+				drawingPanel.setDrawing(drawing);
+				updateTitle();
+			}
+			return drawingPanel.getDrawing() == drawing;
+		}
+		
+		/**
+		 * Method for adding received shapes to the drawing shown
+		 * @param shapes, the shapes in the order they were received
+		 */
+		private void add(List<Shape> shapes) {
+			if(shapes.isEmpty()) {
+				return;
+			}
+			
+			// the received shapes cannot be undone, but the steps drawn meanwhile can
+			drawingPanel.addBelowHistory(shapes);
+			
+			if(firstShown == 0) {
+				firstShown = System.nanoTime();
+			}
+		}
+		
+		/**
+		 * Method for adding the shapes that waited for the mouse to be released,
+		 * showing the drawing received first if it is not yet shown
+		 */
+		public void addWaiting() {
+			// nothing is shown before the first shape arrives, unless the drawing is empty
+			if((received > 0 || isDone()) && show()) {
+				add(waiting);
+			}
+			waiting.clear();
 		}
 		
 		protected void done() {
-			Drawing loadedDrawing;
+			if(isCancelled()) {
+				return;
+			}
+			
 			try {
-				loadedDrawing = FileHandler.loadFromXML(get());
-				drawingPanel.setDrawing(loadedDrawing);
-				updateTitle();
+				int shapes = get();
+				if(!dragging) {
+					addWaiting();
+				}
+				long finished = System.nanoTime();
+				fileStatus.setText("Loaded " + fileName);
+				System.out.printf("Loaded %s: %d shapes, first shown after %.1f ms, all received after %.1f ms%n",
+								  fileName, shapes, firstShown == 0 ? 0.0 : (firstShown - started) / 1e6,
+								  (finished - started) / 1e6);
 			} catch(Exception e) {
 				e.printStackTrace();
+				fileStatus.setText("Failed to load " + fileName);
 				JOptionPane.showMessageDialog(null, "Failed to get file from server.");
 			}
 		}
 	}
 
+	/**
+	* <h2>FileSaveWorker</h2>
+	* Implementation of SwingWorker for saving a snapshot of the drawing to file,
+	* showing the progress in the status bar
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	public class FileSaveWorker extends SwingWorker<String, Void> {
+		private final Drawing snapshot;
+		private final String fileName;
+		private boolean upload;
+		
+		public FileSaveWorker(Drawing snapshot, String fileName, boolean upload) {
+			this.snapshot = snapshot;
+			this.fileName = fileName;
+			this.upload = upload;
+			
+			addPropertyChangeListener(e -> {
+				// progress may still be delivered after the save is done
+				if("progress".equals(e.getPropertyName()) && !isDone()) {
+					fileStatus.setText("Saving " + fileName + "... " + e.getNewValue() + "%");
+				}
+			});
+		}
+		
+		protected String doInBackground() throws Exception {
+			int shapes = snapshot.getSize();
+			int[] percent = { 0 };
+			return FileHandler.save(snapshot, fileName, written -> {
+				// the progress is only passed on when it changes
+				int now = (int)(100L * written / Math.max(1, shapes));
+				if(now > percent[0]) {
+					percent[0] = now;
+					setProgress(Math.min(now, 100));
+				}
+			});
+		}
+		
+		protected void done() {
+			try {
+				String savedName = get();
+				fileStatus.setText("Saved " + savedName);
+				if(upload) {
+					new SaveWorker(savedName).execute();
+				}
+			} catch(Exception e) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				System.out.println("failed to save, exception in JPaintInterface: " + cause.getMessage());
+				fileStatus.setText("Failed to save " + fileName);
+				JOptionPane.showMessageDialog(null, "Failed to save " + fileName + ": " + cause.getMessage());
+			}
+			startNextSave();
+		}
+	}
+
 	/**
 	* <h2>SaveWorker</h2>
 	* Implementation of SwingWorker for saving a xml-file to server
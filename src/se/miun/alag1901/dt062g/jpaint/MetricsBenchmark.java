@@ -0,0 +1,132 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+* <h1>MetricsBenchmark</h1>
+* Class for measuring the time and the memory allocated to sum the area and
+* circumference of the shapes of a drawing. A drawing of circles, rectangles and
+* strokes, where every tenth shape is missing its second point as when the mouse
+* was pressed but never dragged, is summed with the methods throwing
+* UninitializedPointException, with the methods returning NaN, by computing the
+* totals of the drawing again and by getting the totals kept by the drawing.
+* Usage: MetricsBenchmark [number of shapes] [rounds]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class MetricsBenchmark {
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	// keeps the results in use so they are not optimized away
+	private static double sink = 0;
+
+	public static void main(String[] args) {
+		int shapes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Random random = new Random(1);
+		Drawing drawing = new Drawing();
+		for(int i = 0; i < shapes; ++i) {
+			int x = random.nextInt(800), y = random.nextInt(600);
+			Shape shape;
+			switch(i % 3) {
+			case 0:
+				shape = new Circle(x, y, "#ff0000");
+				break;
+			case 1:
+				shape = new Rectangle(x, y, "#0000ff");
+				break;
+			default:
+				shape = new Stroke(x, y, "#00ff00", Stroke.BRUSH_WIDTH);
+				shape.addPoint(x + random.nextInt(40), y + random.nextInt(40));
+				break;
+			}
+			if(i % 10 != 0) {
+				shape.addPoint(x + random.nextInt(40), y + random.nextInt(40));
+			}
+			drawing.addShape(shape);
+		}
+		// shape objects are measured, not compactly stored shapes
+		drawing.setCompact(false);
+
+		System.out.printf("%d shapes%n%12s %12s %16s%n", shapes, "method", "ms/round", "bytes/round");
+		print("exceptions", drawing, rounds, d -> sumWithExceptions(d));
+		print("NaN", drawing, rounds, d -> sumWithNaN(d));
+		print("recompute", drawing, rounds, d -> {
+			d.recomputeTotals();
+			return d.getTotalArea() + d.getTotalCircumference();
+		});
+		print("kept", drawing, rounds, d -> d.getTotalArea() + d.getTotalCircumference());
+	}
+
+	/**
+	 * Method for measuring and printing a way of summing a drawing
+	 * @param method, the name of the way
+	 * @param drawing, the drawing to sum
+	 * @param rounds, the number of times to sum
+	 * @param sum, the function summing the drawing
+	 */
+	private static void print(String method, Drawing drawing, int rounds, ToDoubleFunction<Drawing> sum) {
+		// first round warms up
+		measure(drawing, rounds, sum);
+		double[] result = measure(drawing, rounds, sum);
+		System.out.printf("%12s %12.3f %16.0f%n", method, result[0], result[1]);
+	}
+
+	/**
+	 * Method for summing a drawing a number of times
+	 * @param drawing, the drawing to sum
+	 * @param rounds, the number of times to sum
+	 * @param sum, the function summing the drawing
+	 * @return the average time in milliseconds and bytes allocated per round
+	 */
+	private static double[] measure(Drawing drawing, int rounds, ToDoubleFunction<Drawing> sum) {
+		long thread = Thread.currentThread().getId();
+		long allocated = THREADS.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for(int i = 0; i < rounds; ++i) {
+			sink += sum.applyAsDouble(drawing);
+		}
+		long time = System.nanoTime() - start;
+		allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+		return new double[] { time / 1e6 / rounds, (double)allocated / rounds };
+	}
+
+	/**
+	 * Method for summing the area and circumference of every shape, counting
+	 * shapes that throw UninitializedPointException as 0
+	 * @param drawing, the drawing
+	 * @return the sum
+	 */
+	private static double sumWithExceptions(Drawing drawing) {
+		double sum = 0;
+		for(Shape shape : drawing.getShapes()) {
+			try {
+				sum += shape.getArea() + shape.getCircumference();
+			} catch(UninitializedPointException e) {
+				// an incomplete shape has no size
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Method for summing the area and circumference of every complete shape
+	 * @param drawing, the drawing
+	 * @return the sum
+	 */
+	private static double sumWithNaN(Drawing drawing) {
+		double sum = 0;
+		for(Shape shape : drawing.getShapes()) {
+			if(shape.isComplete()) {
+				sum += shape.getAreaOrNaN() + shape.getCircumferenceOrNaN();
+			}
+		}
+		return sum;
+	}
+}
@@ -1,6 +1,5 @@
 package se.miun.alag1901.dt062g.jpaint;
 
-import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 
@@ -11,7 +10,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 * Class representing a rectangle shape.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.3
+* @version 1.6
 * @since   2020-12-05
 */
 @XmlRootElement
@@ -50,13 +49,12 @@ public class Rectangle extends Shape {
 	 * @throws UninitializedPointException
 	 */
 	public double getWidth() throws UninitializedPointException {
-		// return height (distance between the points in the x dimension),
-		// or -1 if operation failed
-		try {
-			return Math.abs(points.get(0).getX() - points.get(1).getX());
-		} catch(Exception e) {
+		// return width (distance between the points in the x dimension),
+		// or throw UninitializedPointException if operation cannot be performed
+		if(!isComplete()) {
 			throw new UninitializedPointException("error in Rectangle.getWidth()");
 		}
+		return Math.abs(getPointX(0) - getPointX(1));
 	}
 
 	/**
@@ -65,11 +63,10 @@ public class Rectangle extends Shape {
 	 * @throws UninitializedPointException
 	 */
 	public double getHeight() throws UninitializedPointException {
-		try {
-			return Math.abs(points.get(0).getY() - points.get(1).getY());
-		} catch(Exception e) {
+		if(!isComplete()) {
 			throw new UninitializedPointException("error in Rectangle.getHeight()");
 		}
+		return Math.abs(getPointY(0) - getPointY(1));
 	}
 
 	@Override
@@ -105,11 +102,28 @@ public class Rectangle extends Shape {
 		
 		// draw the shape
 		Graphics2D g2 = (Graphics2D)g;
-		g2.setPaint(Color.decode("0x" + this.color.substring(1)));
+		g2.setPaint(this.getPaint());
 		g2.drawRect((int)(upperLeftCorner.getX()), (int)(upperLeftCorner.getY()), width, height);
 		g2.fillRect((int)(upperLeftCorner.getX()), (int)(upperLeftCorner.getY()), width, height);
 	}
 
+	@Override
+	public java.awt.Rectangle getBounds() {
+		// the same corner and size as draw uses
+		Point p1 = points.get(0);
+		Point p2 = points.size() > 1 ? points.get(1) : new Point(0, 0);
+		int width = 0, height = 0;
+		if(isComplete()) {
+			width = (int)Math.abs(p1.getX() - p2.getX());
+			height = (int)Math.abs(p1.getY() - p2.getY());
+		}
+		// otherwise drawn as a single point
+		
+		// the outline reaches one pixel outside, plus antialiasing after a circle
+		return new java.awt.Rectangle((int)Math.min(p1.getX(), p2.getX()) - 1,
+				(int)Math.min(p1.getY(), p2.getY()) - 1, width + 3, height + 3);
+	}
+
 	@Override
 	public double getCircumference() throws UninitializedPointException {
 		// check if operation can be performed, throw exception if not
@@ -131,6 +145,22 @@ public class Rectangle extends Shape {
 		}
 	}
 
+	@Override
+	public double getCircumferenceOrNaN() {
+		if(!isComplete()) {
+			return Double.NaN;
+		}
+		return 2 * Math.abs(getPointY(0) - getPointY(1)) + 2 * Math.abs(getPointX(0) - getPointX(1));
+	}
+
+	@Override
+	public double getAreaOrNaN() {
+		if(!isComplete()) {
+			return Double.NaN;
+		}
+		return Math.abs(getPointY(0) - getPointY(1)) * Math.abs(getPointX(0) - getPointX(1));
+	}
+
 	@Override
 	public String toString() {
 		// return a string with data about the rectangle 
@@ -0,0 +1,100 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+* <h1>RenderBenchmark</h1>
+* Class for measuring the time and the memory allocated to paint a drawing, as
+* the drawing panel does on every repaint. A drawing of brush circles in a few
+* colors is painted into an image, both as shape objects and compactly stored,
+* and both completely and clipped to a small area as after a brush dab.
+* Last a drawing panel showing the drawing is painted as during a drag of brush
+* dabs, and the frames and pixels it counted are printed.
+* Usage: RenderBenchmark [number of shapes] [frames]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.3
+* @since   2026-10-18
+*/
+public class RenderBenchmark {
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		int shapes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Random random = new Random(1);
+		String[] colors = { "#ff0000", "#0000ff", "#00ff00", "#ffff00", "#ffc800" };
+		Drawing drawing = new Drawing();
+		drawing.setCompact(false);
+		for(int i = 0; i < shapes; ++i) {
+			// create a new string for every shape, as the drawing panel does
+			String color = new String(colors[(i / 1000) % colors.length]);
+			int x = random.nextInt(800), y = random.nextInt(600);
+			Circle circle = new Circle(x, y, color);
+			circle.addPoint(x + 8, y + 8);
+			drawing.addShape(circle);
+		}
+
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+		java.awt.Rectangle[] areas = { null, new java.awt.Rectangle(400, 300, 32, 32) };
+		System.out.printf("%d shapes%n%10s %8s %12s %16s%n", shapes, "storage", "area", "ms/frame", "bytes/frame");
+		for(boolean compact : new boolean[] { false, true }) {
+			drawing.setCompact(compact);
+			for(java.awt.Rectangle area : areas) {
+				// first round warms up
+				measure(drawing, image, area, frames);
+				double[] result = measure(drawing, image, area, frames);
+				System.out.printf("%10s %8s %12.2f %16.0f%n", compact ? "compact" : "objects",
+								  area == null ? "all" : area.width + "x" + area.height, result[0], result[1]);
+			}
+		}
+
+		DrawingPanel panel = new DrawingPanel();
+		panel.setDrawing(drawing);
+		panel.setSize(image.getWidth(), image.getHeight());
+		long start = System.nanoTime();
+		panel.beginDrag();
+		for(int i = 0; i < frames; ++i) {
+			// every dab repaints a small area of the panel
+			Graphics2D g = image.createGraphics();
+			g.clip(areas[1]);
+			panel.paint(g);
+			g.dispose();
+		}
+		panel.endDrag();
+		double time = (System.nanoTime() - start) / 1e6 / frames;
+		System.out.printf("drag: %d frames, %d pixels painted, %d with full repaints, %.2f ms/frame%n",
+						  panel.getFramesPainted(), panel.getPixelsPainted(),
+						  panel.getFramesPainted() * panel.getWidth() * panel.getHeight(), time);
+	}
+
+	/**
+	 * Method for painting a drawing a number of times
+	 * @param drawing, the drawing to paint
+	 * @param image, the image to paint into
+	 * @param area, the area to paint as the clip, or null to paint everything
+	 * @param frames, the number of times to paint
+	 * @return the average time in milliseconds and bytes allocated per frame
+	 */
+	private static double[] measure(Drawing drawing, BufferedImage image, java.awt.Rectangle area, int frames) {
+		long thread = Thread.currentThread().getId();
+		long allocated = THREADS.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for(int i = 0; i < frames; ++i) {
+			Graphics2D g = image.createGraphics();
+			if(area != null) {
+				g.clip(area);
+			}
+			drawing.draw(g, g.getClipBounds());
+			g.dispose();
+		}
+		long time = System.nanoTime() - start;
+		allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+		return new double[] { time / 1e6 / frames, (double)allocated / frames };
+	}
+}
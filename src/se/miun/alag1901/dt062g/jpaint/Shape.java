@@ -1,36 +1,47 @@
 package se.miun.alag1901.dt062g.jpaint;
 
+import java.awt.Color;
 import java.util.ArrayList;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlSeeAlso;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
 * <h1>Shape</h1>
 * Abstract super class for representing various geometric figures.
+* The color is parsed once, when it is set, and kept as a shared Color object.
+* The points are read and written by the file formats and ShapeStore through
+* package-level methods, so subclasses can keep them in another form.
+* The circumference and area of shapes missing points can be got as NaN instead
+* of an exception, which is cheaper when summing many shapes.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.3
+* @version 1.8
 * @since   2020-12-05
 */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement
-@XmlSeeAlso({ Circle.class, Rectangle.class })
+@XmlSeeAlso({ Circle.class, Rectangle.class, Stroke.class })
 public abstract class Shape implements Drawable {
 	@XmlElement
 	protected String color;
 	@XmlElement(name="point")
 	protected ArrayList<Point> points;
+	// the parsed color, null if color is not a valid color
+	@XmlTransient
+	protected Color paint;
 
 	/**
 	 * Default constructor
 	 */
 	public Shape() {
 		points = new ArrayList<Point>();
-		color = "";
+		setColor("");
 	}
 	
 	/**
@@ -44,7 +55,7 @@ public abstract class Shape implements Drawable {
 		points = new ArrayList<Point>();
 		points.add(new Point(pX, pY));
 		
-		color = pColor;
+		setColor(pColor);
 	}
 
 	/**
@@ -56,7 +67,7 @@ public abstract class Shape implements Drawable {
 		points = new ArrayList<Point>();
 		points.add(pPoint);
 		
-		color = pColor;
+		setColor(pColor);
 	}
 
 	/**
@@ -73,6 +84,48 @@ public abstract class Shape implements Drawable {
 	 */
 	public void setColor(String pColor) {
 		color = pColor;
+		paint = ColorCache.get(pColor);
+	}
+
+	/**
+	 * Method for setting shape color when it has already been parsed
+	 * @param pColor, the color
+	 * @param pPaint, the parsed color, from ColorCache
+	 */
+	void setColor(String pColor, Color pPaint) {
+		color = pColor;
+		paint = pPaint;
+	}
+
+	/**
+	 * Method for getting the color to paint the shape with
+	 * @return the parsed color
+	 * @throws NumberFormatException if the color is not on the form #rrggbb
+	 */
+	public Color getPaint() {
+		if(paint == null) {
+			// fail in the same way as parsing the color while painting always has
+			return Color.decode("0x" + color.substring(1));
+		}
+		return paint;
+	}
+
+	/**
+	 * Method for getting the color packed into an int
+	 * @return the color as returned by Color.getRGB
+	 * @throws NumberFormatException if the color is not on the form #rrggbb
+	 */
+	public int getARGB() {
+		return getPaint().getRGB();
+	}
+
+	/**
+	 * Method called by JAXB after the shape has been read, parses the color
+	 * @param unmarshaller, the unmarshaller
+	 * @param parent, the drawing holding the shape
+	 */
+	void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+		paint = ColorCache.get(color);
 	}
 
 	/**
@@ -89,6 +142,116 @@ public abstract class Shape implements Drawable {
 	 */
 	public abstract double getArea() throws UninitializedPointException;
 
+	/**
+	 * Method for checking if the shape has the points needed to get its size
+	 * @return true if the circumference and area can be got
+	 */
+	public boolean isComplete() {
+		return getPointCount() > 1;
+	}
+
+	/**
+	 * Method for getting shape circumference without throwing an exception
+	 * @return the circumference, or NaN if the shape is not complete
+	 */
+	public abstract double getCircumferenceOrNaN();
+
+	/**
+	 * Method for getting shape area without throwing an exception
+	 * @return the area, or NaN if the shape is not complete
+	 */
+	public abstract double getAreaOrNaN();
+
+	/**
+	 * Method for getting the area covered when the shape is drawn
+	 * @return a rectangle containing every pixel the shape may paint
+	 */
+	public abstract java.awt.Rectangle getBounds();
+
+	/**
+	 * Method for checking if drawing the shape turns antialiasing on, which then
+	 * stays on for every shape drawn after it
+	 * @return true if the shape turns antialiasing on
+	 */
+	boolean isAntialiased() {
+		return false;
+	}
+
+	/**
+	 * Method for getting the number of points of the shape
+	 * @return the number of points
+	 */
+	int getPointCount() {
+		return points.size();
+	}
+
+	/**
+	 * Method for getting the x coordinate of a point
+	 * @param index, the index of the point
+	 * @return the x coordinate
+	 */
+	double getPointX(int index) {
+		return points.get(index).getX();
+	}
+
+	/**
+	 * Method for getting the y coordinate of a point
+	 * @param index, the index of the point
+	 * @return the y coordinate
+	 */
+	double getPointY(int index) {
+		return points.get(index).getY();
+	}
+
+	/**
+	 * Method for adding a point after the other points, as the file formats do
+	 * @param pX, the x coordinate
+	 * @param pY, the y coordinate
+	 */
+	void appendPoint(double pX, double pY) {
+		points.add(new Point(pX, pY));
+	}
+
+	/**
+	 * Method for replacing the points with coordinates from arrays, reusing the
+	 * point objects already in the shape
+	 * @param xs, the x coordinates
+	 * @param ys, the y coordinates
+	 * @param from, the index of the first point in the arrays
+	 * @param to, the index after the last point
+	 */
+	void setPoints(double[] xs, double[] ys, int from, int to) {
+		while(points.size() > to - from) {
+			points.remove(points.size() - 1);
+		}
+		for(int p = from; p < to; ++p) {
+			if(p - from < points.size()) {
+				Point point = points.get(p - from);
+				point.setX(xs[p]);
+				point.setY(ys[p]);
+			} else {
+				points.add(new Point(xs[p], ys[p]));
+			}
+		}
+	}
+
+	/**
+	 * Method for copying the shape, so the copy is not changed with it
+	 * @return a new shape of the same type, with the same points and color
+	 */
+	Shape copy() {
+		Shape copy = DrawingReader.createShape(DrawingWriter.typeOf(this));
+		int count = getPointCount();
+		double[] xs = new double[count], ys = new double[count];
+		for(int p = 0; p < count; ++p) {
+			xs[p] = getPointX(p);
+			ys[p] = getPointY(p);
+		}
+		copy.setPoints(xs, ys, 0, count);
+		copy.setColor(color, paint);
+		return copy;
+	}
+
 	/**
 	 * Method for setting the second shape point using a Point object
 	 * @param pPoint, a point object
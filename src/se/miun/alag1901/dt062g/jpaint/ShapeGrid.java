@@ -0,0 +1,257 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+* <h1>ShapeGrid</h1>
+* Class for finding the shapes of a drawing that intersect an area, using a
+* uniform grid of square cells. Every cell lists the shapes whose bounds overlap
+* it, by their index in the drawing. Shapes are added and removed last, in the
+* same order as in the drawing, so every list stays sorted. Shapes covering very
+* many cells are kept in a separate list that is always searched.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.2
+* @since   2026-10-18
+*/
+public class ShapeGrid {
+	public static final int CELL_SIZE = 64;
+	// shapes covering more cells than this are kept in the large list
+	private static final int MAX_CELLS = 256;
+
+	// the first element of every list holds its length
+	private final HashMap<Long, int[]> cells = new HashMap<Long, int[]>();
+	private int[] large = new int[] { 0 };
+
+	// the bounds of every shape when it was added
+	private int[] xs = new int[64], ys = new int[64], widths = new int[64], heights = new int[64];
+	private int size = 0;
+	private int firstAntialiased = -1;
+
+	/**
+	 * Method for getting the number of shapes in the grid
+	 * @return the number of shapes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Method for getting the index of the first shape in the grid that turns
+	 * antialiasing on, such as a circle, which stays on for every shape drawn after it
+	 * @return the index, or -1 if there is no such shape
+	 */
+	public int getFirstAntialiased() {
+		return firstAntialiased;
+	}
+
+	/**
+	 * Method for getting the bounds a shape had when it was added
+	 * @param index, the index of the shape
+	 * @return the bounds
+	 */
+	public java.awt.Rectangle getBounds(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return new java.awt.Rectangle(xs[index], ys[index], widths[index], heights[index]);
+	}
+
+	/**
+	 * Method for adding the next shape of the drawing
+	 * @param shape, the shape, its bounds must not change while it is in the grid
+	 */
+	public void add(Shape shape) {
+		if(size == xs.length) {
+			xs = Arrays.copyOf(xs, size * 2);
+			ys = Arrays.copyOf(ys, size * 2);
+			widths = Arrays.copyOf(widths, size * 2);
+			heights = Arrays.copyOf(heights, size * 2);
+		}
+
+		java.awt.Rectangle bounds = shape.getBounds();
+		xs[size] = bounds.x;
+		ys[size] = bounds.y;
+		widths[size] = bounds.width;
+		heights[size] = bounds.height;
+		if(firstAntialiased < 0 && shape.isAntialiased()) {
+			firstAntialiased = size;
+		}
+
+		if(isLarge(size)) {
+			large = append(large, size);
+		} else {
+			for(int cellY = firstCell(ys[size]); cellY <= lastCell(ys[size], heights[size]); ++cellY) {
+				for(int cellX = firstCell(xs[size]); cellX <= lastCell(xs[size], widths[size]); ++cellX) {
+					Long key = key(cellX, cellY);
+					int[] cell = cells.get(key);
+					int[] appended = append(cell == null ? new int[] { 0, 0, 0, 0 } : cell, size);
+					if(appended != cell) {
+						cells.put(key, appended);
+					}
+				}
+			}
+		}
+		++size;
+	}
+
+	/**
+	 * Method for removing the last shape
+	 */
+	public void removeLast() {
+		if(size == 0) {
+			return;
+		}
+		--size;
+		if(firstAntialiased == size) {
+			firstAntialiased = -1;
+		}
+
+		if(isLarge(size)) {
+			--large[0];
+			return;
+		}
+		for(int cellY = firstCell(ys[size]); cellY <= lastCell(ys[size], heights[size]); ++cellY) {
+			for(int cellX = firstCell(xs[size]); cellX <= lastCell(xs[size], widths[size]); ++cellX) {
+				Long key = key(cellX, cellY);
+				int[] cell = cells.get(key);
+				// the shape is the last one in every cell it was added to
+				if(--cell[0] == 0) {
+					cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method for finding the shapes whose bounds intersect an area
+	 * @param area, the area
+	 * @return the indexes of the shapes in increasing order
+	 */
+	public int[] query(java.awt.Rectangle area) {
+		int[] found = new int[16];
+		int count = 0;
+
+		if(!area.isEmpty()) {
+			long cellsX = (long)lastCell(area.x, area.width) - firstCell(area.x) + 1;
+			long cellsY = (long)lastCell(area.y, area.height) - firstCell(area.y) + 1;
+
+			if(cellsX * cellsY > cells.size()) {
+				// the area covers more cells than there are, visit every cell instead
+				for(int[] cell : cells.values()) {
+					found = grow(found, count + cell[0]);
+					count = collect(cell, area, found, count);
+				}
+			} else {
+				for(int cellY = firstCell(area.y); cellY <= lastCell(area.y, area.height); ++cellY) {
+					for(int cellX = firstCell(area.x); cellX <= lastCell(area.x, area.width); ++cellX) {
+						int[] cell = cells.get(key(cellX, cellY));
+						if(cell != null) {
+							found = grow(found, count + cell[0]);
+							count = collect(cell, area, found, count);
+						}
+					}
+				}
+			}
+			found = grow(found, count + large[0]);
+			count = collect(large, area, found, count);
+		}
+
+		// shapes overlapping several cells were found more than once
+		Arrays.sort(found, 0, count);
+		int unique = 0;
+		for(int i = 0; i < count; ++i) {
+			if(unique == 0 || found[unique - 1] != found[i]) {
+				found[unique++] = found[i];
+			}
+		}
+		return Arrays.copyOf(found, unique);
+	}
+
+	/**
+	 * Method for collecting the shapes of a list that intersect an area
+	 * @param list, the list of shapes
+	 * @param area, the area
+	 * @param found, the array to collect into, large enough for the whole list
+	 * @param count, the number of shapes already collected
+	 * @return the new number of collected shapes
+	 */
+	private int collect(int[] list, java.awt.Rectangle area, int[] found, int count) {
+		for(int i = 1; i <= list[0]; ++i) {
+			int index = list[i];
+			if(area.intersects(xs[index], ys[index], widths[index], heights[index])) {
+				found[count++] = index;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Method for checking if a shape is kept in the large list
+	 * @param index, the index of the shape
+	 * @return true for shapes covering too many cells, or with invalid bounds
+	 */
+	private boolean isLarge(int index) {
+		if(widths[index] <= 0 || heights[index] <= 0) {
+			return true;
+		}
+		long cellsX = (long)lastCell(xs[index], widths[index]) - firstCell(xs[index]) + 1;
+		long cellsY = (long)lastCell(ys[index], heights[index]) - firstCell(ys[index]) + 1;
+		return cellsX * cellsY > MAX_CELLS;
+	}
+
+	/**
+	 * Method for getting the cell holding a coordinate
+	 * @param start, the coordinate
+	 * @return the cell
+	 */
+	private static int firstCell(int start) {
+		return Math.floorDiv(start, CELL_SIZE);
+	}
+
+	/**
+	 * Method for getting the cell holding the last coordinate of a range
+	 * @param start, the first coordinate
+	 * @param length, the length of the range
+	 * @return the cell
+	 */
+	private static int lastCell(int start, int length) {
+		return (int)Math.floorDiv((long)start + length - 1, CELL_SIZE);
+	}
+
+	/**
+	 * Method for getting the key of a cell
+	 * @param cellX, the column of the cell
+	 * @param cellY, the row of the cell
+	 * @return the key
+	 */
+	private static Long key(int cellX, int cellY) {
+		return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Method for appending to a list
+	 * @param list, the list
+	 * @param value, the value to append
+	 * @return the list, or a larger copy of it
+	 */
+	private static int[] append(int[] list, int value) {
+		list = grow(list, list[0] + 2);
+		list[++list[0]] = value;
+		return list;
+	}
+
+	/**
+	 * Method for making sure an array has room for a number of elements
+	 * @param array, the array
+	 * @param length, the number of elements
+	 * @return the array, or a larger copy of it
+	 */
+	private static int[] grow(int[] array, int length) {
+		if(length > array.length) {
+			return Arrays.copyOf(array, Math.max(length, array.length * 2));
+		}
+		return array;
+	}
+}
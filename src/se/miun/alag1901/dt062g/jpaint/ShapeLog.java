@@ -0,0 +1,163 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+* <h1>ShapeLog</h1>
+* Class storing shape objects in order, in chunks of a fixed size that are never
+* moved, so adding a shape never copies the ones before it. Shapes are only added
+* and removed last.
+* <p>
+* A snapshot shares the chunks with the log, except the last one, and holds a
+* copy of the last shape, since the drawing panel keeps changing it while the
+* mouse is dragged. The log copies a chunk before changing a slot a snapshot may
+* still read, which only happens when shapes are removed, so snapshots never
+* change and can be read by other threads without locks. The size is published after the shape is written,
+* so the shapes below the size read by another thread can also be read while
+* shapes are only added.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class ShapeLog extends AbstractList<Shape> {
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private Shape[][] chunks;
+	private volatile int size;
+	// the number of chunks, from the first, snapshots may read, which are copied before slots are reused
+	private int sharedChunks = 0;
+	// snapshots cannot be changed
+	private final boolean readOnly;
+
+	/**
+	 * Default constructor
+	 */
+	public ShapeLog() {
+		chunks = new Shape[1][];
+		size = 0;
+		readOnly = false;
+	}
+
+	/**
+	 * Constructor copying shapes into a new log
+	 * @param shapes, the shapes to copy, in order
+	 */
+	public ShapeLog(Collection<? extends Shape> shapes) {
+		this();
+		addAll(shapes);
+	}
+
+	/**
+	 * Constructor for snapshots
+	 * @param chunks, the chunks shared with the log
+	 * @param size, the number of shapes
+	 */
+	private ShapeLog(Shape[][] chunks, int size) {
+		this.chunks = chunks;
+		this.size = size;
+		readOnly = true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Shape get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+	}
+
+	@Override
+	public boolean add(Shape shape) {
+		checkWritable();
+		int index = size;
+		int chunk = index >>> CHUNK_SHIFT;
+		if(chunk == chunks.length) {
+			// the chunks themselves are kept, only the table of them grows
+			chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		}
+		if(chunks[chunk] == null) {
+			chunks[chunk] = new Shape[CHUNK_SIZE];
+		}
+		chunks[chunk][index & CHUNK_MASK] = shape;
+		size = index + 1;
+		++modCount;
+		return true;
+	}
+
+	@Override
+	public void add(int index, Shape shape) {
+		if(index != size) {
+			throw new UnsupportedOperationException("shapes can only be added last");
+		}
+		add(shape);
+	}
+
+	@Override
+	public Shape remove(int index) {
+		checkWritable();
+		if(index != size - 1) {
+			throw new UnsupportedOperationException("only the last shape can be removed");
+		}
+
+		int chunk = index >>> CHUNK_SHIFT;
+		if(chunk < sharedChunks) {
+			// the slot will be reused, leave the chunk to the snapshots, which have tables of their own
+			chunks[chunk] = chunks[chunk].clone();
+			// shapes are removed last, so the chunks after it are already copied or unused
+			sharedChunks = chunk;
+		}
+		Shape removed = chunks[chunk][index & CHUNK_MASK];
+		chunks[chunk][index & CHUNK_MASK] = null;
+		size = index;
+		++modCount;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		checkWritable();
+		chunks = new Shape[1][];
+		size = 0;
+		sharedChunks = 0;
+		++modCount;
+	}
+
+	/**
+	 * Method for getting the shapes as they are now, the snapshot is not changed
+	 * when the log is
+	 * @return a read only log of the same shapes
+	 */
+	public ShapeLog snapshot() {
+		int index = size - 1;
+		if(index < 0) {
+			return new ShapeLog(new Shape[1][], 0);
+		}
+
+		// the chunk of the last shape is copied with a copy of the shape, the chunks before it are shared
+		int chunk = index >>> CHUNK_SHIFT;
+		Shape[][] table = Arrays.copyOf(chunks, chunk + 1);
+		table[chunk] = Arrays.copyOf(chunks[chunk], CHUNK_SIZE);
+		table[chunk][index & CHUNK_MASK] = chunks[chunk][index & CHUNK_MASK].copy();
+		sharedChunks = Math.max(sharedChunks, chunk);
+		return new ShapeLog(table, size);
+	}
+
+	/**
+	 * Method for checking that the log is not a snapshot
+	 */
+	private void checkWritable() {
+		if(readOnly) {
+			throw new UnsupportedOperationException("snapshots cannot be changed");
+		}
+	}
+}
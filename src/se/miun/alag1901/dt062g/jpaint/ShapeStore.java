@@ -0,0 +1,369 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.Color;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+* <h1>ShapeStore</h1>
+* Class storing shapes column by column in primitive arrays instead of as objects:
+* a type tag, a color index and the coordinates of the points of every shape,
+* and the width of every stroke.
+* Types and colors, together with their parsed Color, are kept in small tables
+* and referred to by index.
+* <p>
+* The shapes returned by get are copies, changing them does not change the store.
+* To avoid creating objects when every shape is visited, forEachView passes one
+* reused flyweight shape per type to the action instead, created for that call. The most recently added
+* shape is kept as the object that was added until another shape is added, since
+* the drawing panel keeps changing it while the mouse is dragged. Threads reading
+* the store at the same time pass their own flyweights to view.
+* <p>
+* A snapshot shares the arrays with the store and holds a copy of the most
+* recently added shape. Adding shapes only writes past the shapes a snapshot
+* holds, and the arrays are copied before shapes a snapshot may still read are
+* overwritten after being removed, so snapshots never change and can be read by
+* other threads while shapes are added to the store.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.7
+* @since   2026-10-18
+*/
+public class ShapeStore extends AbstractList<Shape> {
+	private static final int INITIAL_CAPACITY = 64;
+
+	// type and color tables
+	private final List<String> typeNames = new ArrayList<String>();
+	private final List<String> colorNames = new ArrayList<String>();
+	private final List<Color> colorPaints = new ArrayList<Color>();
+	private final Map<String, Integer> colorIndexes = new HashMap<String, Integer>();
+
+	// one entry per stored shape
+	private byte[] types = new byte[INITIAL_CAPACITY];
+	private int[] colors = new int[INITIAL_CAPACITY];
+	// the end of the points of every shape, the points of a shape start where the previous ends
+	private int[] pointEnds = new int[INITIAL_CAPACITY];
+	// the width of every stroke, null until a stroke is stored
+	private float[] widths;
+	private int count = 0;
+
+	// one entry per point
+	private double[] xs = new double[INITIAL_CAPACITY * 2];
+	private double[] ys = new double[INITIAL_CAPACITY * 2];
+
+	// the most recently added shape, not yet stored in the arrays
+	private Shape last;
+
+	// the number of stored shapes snapshots may read, which are copied before being overwritten
+	private int sharedCount = 0;
+	// snapshots cannot be changed
+	private final boolean readOnly;
+
+	/**
+	 * Default constructor
+	 */
+	public ShapeStore() {
+		readOnly = false;
+	}
+
+	/**
+	 * Constructor for storing a collection of shapes
+	 * @param shapes, the shapes to store
+	 */
+	public ShapeStore(Collection<? extends Shape> shapes) {
+		this();
+		addAll(shapes);
+	}
+
+	/**
+	 * Constructor for snapshots, sharing the arrays of a store
+	 * @param store, the store
+	 */
+	private ShapeStore(ShapeStore store) {
+		readOnly = true;
+		typeNames.addAll(store.typeNames);
+		colorNames.addAll(store.colorNames);
+		colorPaints.addAll(store.colorPaints);
+		types = store.types;
+		colors = store.colors;
+		pointEnds = store.pointEnds;
+		widths = store.widths;
+		count = store.count;
+		xs = store.xs;
+		ys = store.ys;
+		last = store.last == null ? null : store.last.copy();
+	}
+
+	@Override
+	public int size() {
+		return last == null ? count : count + 1;
+	}
+
+	@Override
+	public Shape get(int index) {
+		if(index == count && last != null) {
+			return last;
+		}
+		checkIndex(index);
+		return load(index, DrawingReader.createShape(typeNames.get(types[index])));
+	}
+
+	@Override
+	public boolean add(Shape shape) {
+		checkWritable();
+		if(shape == null) {
+			throw new NullPointerException("null shapes cannot be stored");
+		}
+		if(last != null) {
+			store(last);
+		}
+		last = shape;
+		++modCount;
+		return true;
+	}
+
+	@Override
+	public void add(int index, Shape shape) {
+		if(index != size()) {
+			throw new UnsupportedOperationException("shapes can only be added last");
+		}
+		add(shape);
+	}
+
+	@Override
+	public Shape remove(int index) {
+		checkWritable();
+		if(index != size() - 1) {
+			throw new UnsupportedOperationException("only the last shape can be removed");
+		}
+
+		Shape removed;
+		if(last != null) {
+			removed = last;
+			last = null;
+		} else {
+			removed = get(index);
+			if(index < sharedCount) {
+				// the next shape stored takes its place, leave the arrays to the snapshots
+				copyArrays();
+			}
+			--count;
+		}
+		++modCount;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		checkWritable();
+		if(sharedCount > 0) {
+			// nothing is kept, so the snapshots are left the old arrays without copying them
+			types = new byte[INITIAL_CAPACITY];
+			colors = new int[INITIAL_CAPACITY];
+			pointEnds = new int[INITIAL_CAPACITY];
+			widths = null;
+			xs = new double[INITIAL_CAPACITY * 2];
+			ys = new double[INITIAL_CAPACITY * 2];
+			sharedCount = 0;
+		}
+		count = 0;
+		last = null;
+		++modCount;
+	}
+
+	/**
+	 * Method for visiting every shape in order without creating a shape object per
+	 * shape, the shape passed to the action is only valid until the action returns
+	 * @param action, the action to perform on every shape
+	 */
+	public void forEachView(Consumer<? super Shape> action) {
+		// flyweights of this call only, so several threads may visit the shapes at once
+		Shape[] views = createViews();
+		for(int i = 0; i < count; ++i) {
+			action.accept(view(i, views));
+		}
+		if(last != null) {
+			action.accept(last);
+		}
+	}
+
+	/**
+	 * Method for getting a view of a shape using flyweights owned by the caller,
+	 * which lets several threads read the store at once while nothing is added
+	 * @param index, the index of the shape
+	 * @param views, the flyweights to reuse, as created by createViews
+	 * @return the view, only valid until the next call with the same flyweights
+	 */
+	public Shape view(int index, Shape[] views) {
+		if(index == count && last != null) {
+			return last;
+		}
+		checkIndex(index);
+
+		int type = types[index];
+		if(type >= views.length) {
+			// a type stored after the flyweights were created
+			return load(index, DrawingReader.createShape(typeNames.get(type)));
+		}
+		if(views[type] == null) {
+			views[type] = DrawingReader.createShape(typeNames.get(type));
+		}
+		return load(index, views[type]);
+	}
+
+	/**
+	 * Method for creating room for one flyweight per type of the stored shapes
+	 * @return the flyweights, to be passed to view
+	 */
+	public Shape[] createViews() {
+		return new Shape[typeNames.size()];
+	}
+
+	/**
+	 * Method for getting the shapes as they are now, the snapshot is not changed
+	 * when the store is
+	 * @return a read only store of the same shapes
+	 */
+	public ShapeStore snapshot() {
+		sharedCount = Math.max(sharedCount, count);
+		return new ShapeStore(this);
+	}
+
+	/**
+	 * Method for getting the number of points stored for all shapes
+	 * @return the number of points
+	 */
+	public int getPointCount() {
+		return count == 0 ? 0 : pointEnds[count - 1];
+	}
+
+	/**
+	 * Method for copying a stored shape into a shape object
+	 * @param index, the index of the shape
+	 * @param target, an empty shape of the right type, or a view to reuse
+	 * @return the target
+	 */
+	private Shape load(int index, Shape target) {
+		int start = index == 0 ? 0 : pointEnds[index - 1];
+		target.setPoints(xs, ys, start, pointEnds[index]);
+		target.setColor(colorNames.get(colors[index]), colorPaints.get(colors[index]));
+		if(target instanceof Stroke) {
+			((Stroke)target).setWidth(widths[index]);
+		}
+		return target;
+	}
+
+	/**
+	 * Method for storing a shape in the arrays
+	 * @param shape, the shape to store
+	 */
+	private void store(Shape shape) {
+		if(count == types.length) {
+			int capacity = count * 2;
+			types = Arrays.copyOf(types, capacity);
+			colors = Arrays.copyOf(colors, capacity);
+			pointEnds = Arrays.copyOf(pointEnds, capacity);
+			if(widths != null) {
+				widths = Arrays.copyOf(widths, capacity);
+			}
+		}
+
+		int start = getPointCount();
+		int points = shape.getPointCount();
+		int end = start + points;
+		if(end > xs.length) {
+			int capacity = Math.max(end, xs.length * 2);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+		}
+		for(int p = 0; p < points; ++p) {
+			xs[start + p] = shape.getPointX(p);
+			ys[start + p] = shape.getPointY(p);
+		}
+		if(shape instanceof Stroke) {
+			if(widths == null) {
+				widths = new float[types.length];
+			}
+			widths[count] = (float)((Stroke)shape).getWidth();
+		}
+
+		types[count] = (byte)indexOfType(DrawingWriter.typeOf(shape));
+		colors[count] = indexOfColor(shape);
+		pointEnds[count] = end;
+		++count;
+	}
+
+	/**
+	 * Method for getting the index of a type, adding it to the table if needed
+	 * @param type, the type as written in XML
+	 * @return the index
+	 */
+	private int indexOfType(String type) {
+		int index = typeNames.indexOf(type);
+		if(index < 0) {
+			if(typeNames.size() == Byte.MAX_VALUE) {
+				throw new IllegalStateException("too many shape types");
+			}
+			index = typeNames.size();
+			typeNames.add(type);
+		}
+		return index;
+	}
+
+	/**
+	 * Method for getting the index of the color of a shape, adding it to the table if needed
+	 * @param shape, the shape
+	 * @return the index
+	 */
+	private int indexOfColor(Shape shape) {
+		Integer index = colorIndexes.get(shape.color);
+		if(index == null) {
+			index = colorNames.size();
+			colorNames.add(shape.color);
+			colorPaints.add(shape.paint);
+			colorIndexes.put(shape.color, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Method for replacing the arrays with copies of their own, once no longer
+	 * shared with snapshots
+	 */
+	private void copyArrays() {
+		types = types.clone();
+		colors = colors.clone();
+		pointEnds = pointEnds.clone();
+		if(widths != null) {
+			widths = widths.clone();
+		}
+		xs = xs.clone();
+		ys = ys.clone();
+		sharedCount = 0;
+	}
+
+	/**
+	 * Method for checking that the store is not a snapshot
+	 */
+	private void checkWritable() {
+		if(readOnly) {
+			throw new UnsupportedOperationException("snapshots cannot be changed");
+		}
+	}
+
+	/**
+	 * Method for checking that an index refers to a shape stored in the arrays
+	 * @param index, the index
+	 */
+	private void checkIndex(int index) {
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+	}
+}
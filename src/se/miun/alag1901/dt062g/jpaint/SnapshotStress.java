@@ -0,0 +1,169 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* <h1>SnapshotStress</h1>
+* Class for checking that snapshots of a drawing stay the same while other
+* threads change it. Writer threads add shapes, delete the last ones and keep
+* changing the shape they added last as the drawing panel does while the mouse
+* is dragged, as long as no other shape has been added or removed, while reader
+* threads take snapshots and read every shape of them twice, with
+* the totals in between, checking that nothing changed. This is done both with
+* shape objects and with compactly stored shapes.
+* Usage: SnapshotStress [writers] [readers] [seconds per storage]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class SnapshotStress {
+	private static final String[] COLORS = { "#ff0000", "#00ff00", "#0000ff", "#000000" };
+
+	public static void main(String[] args) throws InterruptedException {
+		int writers = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int readers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		boolean failed = false;
+		for(boolean compact : new boolean[] { false, true }) {
+			failed |= run(compact, writers, readers, seconds);
+		}
+		System.out.println(failed ? "FAILED" : "OK");
+		if(failed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Method for running writers and readers on a drawing for a while
+	 * @param compact, true to store the shapes compactly
+	 * @param writers, the number of writer threads
+	 * @param readers, the number of reader threads
+	 * @param seconds, the time to run
+	 * @return true if a reader found a snapshot that changed, or a thread failed
+	 */
+	private static boolean run(boolean compact, int writers, int readers, int seconds) throws InterruptedException {
+		Drawing drawing = new Drawing("stress", "SnapshotStress");
+		drawing.setCompact(compact);
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicLong edits = new AtomicLong(), snapshots = new AtomicLong(), shapesRead = new AtomicLong();
+		AtomicLong failures = new AtomicLong();
+
+		Thread[] threads = new Thread[writers + readers];
+		for(int t = 0; t < writers; ++t) {
+			long seed = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(seed);
+				// the shape this writer added last, and the size and removals of the drawing after it
+				Shape[] added = { null };
+				int[] state = { 0, 0 };
+				while(running.get()) {
+					edit(drawing, random, added, state);
+					edits.incrementAndGet();
+				}
+			}, "writer-" + t);
+		}
+		for(int t = writers; t < threads.length; ++t) {
+			threads[t] = new Thread(() -> {
+				while(running.get()) {
+					Drawing snapshot = drawing.snapshot();
+					long before = checksum(snapshot);
+					double area = snapshot.getTotalArea();
+					// give the writers time to change the drawing
+					Thread.yield();
+					if(checksum(snapshot) != before || snapshot.getTotalArea() != area) {
+						failures.incrementAndGet();
+					}
+					snapshots.incrementAndGet();
+					shapesRead.addAndGet(snapshot.getSize());
+				}
+			}, "reader-" + t);
+		}
+
+		for(Thread thread : threads) {
+			thread.setUncaughtExceptionHandler((thread1, e) -> {
+				e.printStackTrace();
+				failures.incrementAndGet();
+			});
+			thread.start();
+		}
+		Thread.sleep(seconds * 1000L);
+		running.set(false);
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		System.out.printf("%s: %d edits, %d snapshots of %.0f shapes on average, %d failures, %d shapes left%n",
+						  compact ? "compact" : "objects", edits.get(), snapshots.get(),
+						  snapshots.get() == 0 ? 0.0 : (double)shapesRead.get() / snapshots.get(), failures.get(),
+						  drawing.getSize());
+		return failures.get() > 0;
+	}
+
+	/**
+	 * Method for changing a drawing in one of the ways the program does
+	 * @param drawing, the drawing
+	 * @param random, the random numbers to use
+	 * @param added, the shape the writer added last
+	 * @param state, the size and removals of the drawing after adding it
+	 */
+	private static void edit(Drawing drawing, Random random, Shape[] added, int[] state) {
+		int x = random.nextInt(800), y = random.nextInt(600);
+		String color = COLORS[random.nextInt(COLORS.length)];
+		int action = random.nextInt(10);
+		if(action < 4) {
+			Shape shape;
+			switch(random.nextInt(3)) {
+			case 0:
+				shape = new Circle(x, y, color);
+				break;
+			case 1:
+				shape = new Rectangle(x, y, color);
+				break;
+			default:
+				shape = new Stroke(x, y, color, Stroke.BRUSH_WIDTH);
+				break;
+			}
+			shape.addPoint(x + random.nextInt(40), y + random.nextInt(40));
+			synchronized(drawing) {
+				drawing.addShape(shape);
+				added[0] = shape;
+				state[0] = drawing.getSize();
+				state[1] = drawing.getRemovals();
+			}
+		} else if(action < 8) {
+			// drag the shape, as the drawing panel does, while it is still the one added last
+			synchronized(drawing) {
+				if(added[0] != null && drawing.getSize() == state[0] && drawing.getRemovals() == state[1]) {
+					added[0].addPoint(x, y);
+				}
+			}
+		} else {
+			synchronized(drawing) {
+				drawing.deleteLast(Math.min(drawing.getSize(), 1 + random.nextInt(3)));
+			}
+		}
+	}
+
+	/**
+	 * Method for combining the type, color and points of every shape of a drawing
+	 * into a single number
+	 * @param drawing, the drawing
+	 * @return the number
+	 */
+	private static long checksum(Drawing drawing) {
+		long[] sum = { drawing.getSize() };
+		drawing.forEachShape(shape -> {
+			long hash = shape.getClass().hashCode() * 31L + shape.getColor().hashCode();
+			for(int p = 0; p < shape.getPointCount(); ++p) {
+				hash = hash * 31 + Double.hashCode(shape.getPointX(p));
+				hash = hash * 31 + Double.hashCode(shape.getPointY(p));
+			}
+			sum[0] = sum[0] * 1000003 + hash;
+		});
+		return sum[0];
+	}
+}
@@ -0,0 +1,328 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+* <h1>Stroke</h1>
+* Class representing a stroke of the paintbrush, a line through every point the
+* mouse was dragged over drawn with round ends and corners. The points are packed
+* into a single array of floats, x and y after each other, instead of one Point
+* object each, and are written to XML as a single list.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.2
+* @since   2026-10-18
+*/
+@XmlRootElement
+public class Stroke extends Shape {
+	// as wide as the circles the paintbrush used to paint
+	public static final float BRUSH_WIDTH = (float)(16 * Math.sqrt(2));
+
+	@XmlList
+	@XmlElement
+	private float[] path;
+	@XmlElement
+	private float width;
+	// the number of coordinates used in path, the rest is room to grow
+	@XmlTransient
+	private int length = 0;
+
+	/**
+	 * Default constructor
+	 */
+	public Stroke() {
+		super();
+		path = new float[0];
+		width = BRUSH_WIDTH;
+	}
+
+	/**
+	 * Constructor initializing Stroke with its first point
+	 * @param pX, the x coordinate
+	 * @param pY, the y coordinate
+	 * @param pColor, the color
+	 * @param pWidth, the width of the brush
+	 */
+	public Stroke(double pX, double pY, String pColor, double pWidth) {
+		super();
+		path = new float[16];
+		width = (float)pWidth;
+		setColor(pColor);
+		appendPoint(pX, pY);
+	}
+
+	/**
+	 * Method for getting the width of the brush
+	 * @return the width
+	 */
+	public double getWidth() {
+		return width;
+	}
+
+	/**
+	 * Method for setting the width of the brush
+	 * @param pWidth, the width
+	 */
+	public void setWidth(double pWidth) {
+		width = (float)pWidth;
+	}
+
+	@Override
+	public void draw() {
+		System.out.println(this.toString());
+	}
+
+	@Override
+	public void draw(Graphics g) {
+		if(length == 0) {
+			return;
+		}
+
+		// a single point becomes a dot, since a line with round ends is drawn
+		Path2D.Float line = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(length / 2, 2));
+		line.moveTo(path[0], path[1]);
+		for(int i = length == 2 ? 0 : 2; i < length; i += 2) {
+			line.lineTo(path[i], path[i + 1]);
+		}
+
+		Graphics2D g2 = (Graphics2D)g;
+		java.awt.Stroke previous = g2.getStroke();
+		// enable antialiasing, left on as circles do
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setPaint(this.getPaint());
+		g2.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		g2.draw(line);
+		g2.setStroke(previous);
+	}
+
+	@Override
+	boolean isAntialiased() {
+		return true;
+	}
+
+	@Override
+	public java.awt.Rectangle getBounds() {
+		return getBounds(0);
+	}
+
+	/**
+	 * Method for getting the area covered by the end of the stroke, used to
+	 * repaint only the part added while the mouse is dragged
+	 * @param from, the index of the first point of the end
+	 * @return a rectangle containing every pixel the end may paint
+	 */
+	public java.awt.Rectangle getBounds(int from) {
+		if(from * 2 >= length) {
+			return new java.awt.Rectangle();
+		}
+
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for(int i = from * 2; i < length; i += 2) {
+			minX = Math.min(minX, path[i]);
+			maxX = Math.max(maxX, path[i]);
+			minY = Math.min(minY, path[i + 1]);
+			maxY = Math.max(maxY, path[i + 1]);
+		}
+
+		// half the width on every side, the round joins of sharp corners stay within it
+		double reach = width / 2.0 + 1;
+		int x = (int)Math.floor(minX - reach), y = (int)Math.floor(minY - reach);
+		return new java.awt.Rectangle(x, y, (int)Math.ceil(maxX + reach) - x + 1,
+									  (int)Math.ceil(maxY + reach) - y + 1);
+	}
+
+	/**
+	 * Method for getting the length of the line through the points
+	 * @return the length
+	 * @throws UninitializedPointException if the stroke has no points
+	 */
+	public double getLength() throws UninitializedPointException {
+		if(length == 0) {
+			throw new UninitializedPointException("error in Stroke.getLength()");
+		}
+		return getPathLength();
+	}
+
+	/**
+	 * Method for adding up the length of the segments between the points
+	 * @return the length, 0 if the stroke has no points
+	 */
+	private double getPathLength() {
+		double total = 0;
+		for(int i = 2; i < length; i += 2) {
+			// the coordinates are floats, so the squares cannot overflow
+			double dx = path[i] - path[i - 2], dy = path[i + 1] - path[i - 1];
+			total += Math.sqrt(dx * dx + dy * dy);
+		}
+		return total;
+	}
+
+	@Override
+	public boolean isComplete() {
+		// a single point is drawn as a dot
+		return length > 0;
+	}
+
+	@Override
+	public double getCircumference() throws UninitializedPointException {
+		try {
+			// both sides of the line and the round ends
+			return getLength() * 2 + Math.PI * width;
+		} catch(UninitializedPointException e) {
+			String message = "error in Stroke.getCircumference, from: ";
+			throw new UninitializedPointException(message + e.getMessage());
+		}
+	}
+
+	@Override
+	public double getArea() throws UninitializedPointException {
+		try {
+			// parts of the line crossing itself are counted twice
+			return getLength() * width + Math.PI * width * width / 4;
+		} catch(UninitializedPointException e) {
+			String message = "error in Stroke.getArea, from: ";
+			throw new UninitializedPointException(message + e.getMessage());
+		}
+	}
+
+	@Override
+	public double getCircumferenceOrNaN() {
+		return length == 0 ? Double.NaN : getPathLength() * 2 + Math.PI * width;
+	}
+
+	@Override
+	public double getAreaOrNaN() {
+		return length == 0 ? Double.NaN : getPathLength() * width + Math.PI * width * width / 4;
+	}
+
+	/**
+	 * Method for extending the stroke to a point
+	 * @param pPoint, a point object
+	 */
+	@Override
+	public void addPoint(Point pPoint) {
+		appendPoint(pPoint.getX(), pPoint.getY());
+	}
+
+	/**
+	 * Method for extending the stroke to a point
+	 * @param pX, the x coordinate
+	 * @param pY, the y coordinate
+	 */
+	@Override
+	public void addPoint(double pX, double pY) {
+		appendPoint(pX, pY);
+	}
+
+	@Override
+	int getPointCount() {
+		return length / 2;
+	}
+
+	@Override
+	double getPointX(int index) {
+		checkIndex(index);
+		return path[index * 2];
+	}
+
+	@Override
+	double getPointY(int index) {
+		checkIndex(index);
+		return path[index * 2 + 1];
+	}
+
+	@Override
+	void appendPoint(double pX, double pY) {
+		if(length + 2 > path.length) {
+			path = Arrays.copyOf(path, Math.max(16, path.length * 2));
+		}
+		path[length++] = (float)pX;
+		path[length++] = (float)pY;
+	}
+
+	/**
+	 * Method for removing the points at the end of the stroke
+	 * @param points, the number of points to keep
+	 */
+	void truncate(int points) {
+		length = Math.min(length, Math.max(0, points) * 2);
+	}
+
+	/**
+	 * Method for replacing the points of the stroke
+	 * @param pPath, the coordinates, x and y after each other, kept by the stroke
+	 */
+	void setPath(float[] pPath) {
+		path = pPath;
+		// a path with an odd number of coordinates ends with half a point
+		length = path.length & ~1;
+	}
+
+	@Override
+	void setPoints(double[] xs, double[] ys, int from, int to) {
+		if((to - from) * 2 > path.length) {
+			path = new float[(to - from) * 2];
+		}
+		length = 0;
+		for(int p = from; p < to; ++p) {
+			path[length++] = (float)xs[p];
+			path[length++] = (float)ys[p];
+		}
+	}
+
+	@Override
+	Stroke copy() {
+		Stroke copy = new Stroke();
+		copy.setPath(Arrays.copyOf(path, length));
+		copy.setColor(color, paint);
+		copy.width = width;
+		return copy;
+	}
+
+	/**
+	 * Method for checking that a point exists
+	 * @param index, the index of the point
+	 */
+	private void checkIndex(int index) {
+		if(index < 0 || index * 2 >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length / 2);
+		}
+	}
+
+	/**
+	 * Method called by JAXB before the stroke is written, removes the unused room
+	 * at the end of the path so it is not written
+	 * @param marshaller, the marshaller
+	 * @return true to write the stroke
+	 */
+	boolean beforeMarshal(Marshaller marshaller) {
+		if(path.length != length) {
+			path = Arrays.copyOf(path, length);
+		}
+		return true;
+	}
+
+	@Override
+	void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+		super.afterUnmarshal(unmarshaller, parent);
+		setPath(path == null ? new float[0] : path);
+	}
+
+	@Override
+	public String toString() {
+		return "Stroke [points=" + length / 2 + "; width=" + width + "; color=" + color + "]";
+	}
+}
@@ -0,0 +1,284 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+* <h1>StrokeSimplifier</h1>
+* Class for removing points from strokes that hardly change their shape. No
+* point that is removed lies further than the tolerance from the simplified line.
+* <p>
+* While a stroke is painted, addPoint decides for every mouse position if the
+* previous one is still needed: it is dropped if it, and every point dropped
+* since the last point that was kept, lies within the tolerance of the line from
+* that point to the new position. Strokes that are already painted are
+* simplified with the Ramer-Douglas-Peucker algorithm by simplify.
+* <p>
+* The default tolerance, in pixels, can be set with the system property
+* jpaint.stroke.tolerance.
+* Usage: StrokeSimplifier [input file] [output file] [tolerance]
+* simplifies a saved drawing, after merging the circles of the old paintbrush
+* into strokes, and prints how many points and bytes were saved.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class StrokeSimplifier {
+	public static final double DEFAULT_TOLERANCE = Double.parseDouble(System.getProperty("jpaint.stroke.tolerance", "1.0"));
+
+	private final double tolerance;
+	// the stroke being painted
+	private Stroke stroke;
+	// the points dropped since the last point that is kept, x and y after each other
+	private double[] dropped = new double[32];
+	private int droppedLength = 0;
+	// the number of mouse positions received and dropped
+	private long received = 0;
+	private long removed = 0;
+
+	/**
+	 * Constructor using the default tolerance
+	 */
+	public StrokeSimplifier() {
+		this(DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Constructor
+	 * @param tolerance, the largest distance in pixels a removed point may have
+	 * to the simplified line
+	 */
+	public StrokeSimplifier(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public static void main(String[] args) {
+		if(args.length == 0) {
+			System.out.println("Usage: StrokeSimplifier [input file] [output file] [tolerance]");
+			return;
+		}
+		String input = args[0];
+		String output = args.length > 1 ? args[1] : input;
+		double tolerance = DEFAULT_TOLERANCE;
+		if(args.length > 2) {
+			try {
+				tolerance = Double.parseDouble(args[2]);
+			} catch(NumberFormatException e) {
+				System.out.println("Invalid tolerance argument, using default (" + tolerance + ")");
+			}
+		}
+
+		Drawing drawing = FileHandler.loadFromFile(input);
+		if(drawing == null) {
+			return;
+		}
+		int shapes = drawing.getSize();
+		long points = drawing.getPointCount();
+		long bytes = new File(input).length();
+
+		int merged = drawing.mergeBrushCircles();
+		int removed = drawing.simplifyStrokes(tolerance);
+		FileHandler.saveToFile(drawing, output);
+
+		long savedBytes = new File(output).length();
+		System.out.printf("Merged brush circles into strokes, %d shapes fewer, and removed %d points with tolerance %.2f%n",
+						  merged, removed, tolerance);
+		System.out.printf("Shapes: %d -> %d%n", shapes, drawing.getSize());
+		System.out.printf("Points: %d -> %d (%.1f%% fewer)%n", points, drawing.getPointCount(),
+						  percentLess(points, drawing.getPointCount()));
+		System.out.printf("Bytes:  %d -> %d (%.1f%% smaller)%n", bytes, savedBytes, percentLess(bytes, savedBytes));
+	}
+
+	/**
+	 * Method for starting to simplify a new stroke as it is painted
+	 * @param pStroke, the stroke, holding the point where the mouse was pressed
+	 */
+	public void begin(Stroke pStroke) {
+		stroke = pStroke;
+		droppedLength = 0;
+		received += pStroke.getPointCount();
+	}
+
+	/**
+	 * Method for extending the stroke begun last to a new mouse position
+	 * @param pX, the x coordinate
+	 * @param pY, the y coordinate
+	 */
+	public void addPoint(double pX, double pY) {
+		++received;
+		int count = stroke.getPointCount();
+		if(count > 0 && stroke.getPointX(count - 1) == pX && stroke.getPointY(count - 1) == pY) {
+			++removed;
+			return;
+		}
+		if(count < 2) {
+			stroke.addPoint(pX, pY);
+			return;
+		}
+
+		// the last point kept for sure, and the last point which may be dropped
+		double anchorX = stroke.getPointX(count - 2), anchorY = stroke.getPointY(count - 2);
+		double lastX = stroke.getPointX(count - 1), lastY = stroke.getPointY(count - 1);
+
+		boolean drop = distance(lastX, lastY, anchorX, anchorY, pX, pY) <= tolerance;
+		for(int i = 0; drop && i < droppedLength; i += 2) {
+			drop = distance(dropped[i], dropped[i + 1], anchorX, anchorY, pX, pY) <= tolerance;
+		}
+
+		if(drop) {
+			if(droppedLength + 2 > dropped.length) {
+				dropped = Arrays.copyOf(dropped, dropped.length * 2);
+			}
+			dropped[droppedLength++] = lastX;
+			dropped[droppedLength++] = lastY;
+			stroke.truncate(count - 1);
+			++removed;
+		} else {
+			droppedLength = 0;
+		}
+		stroke.addPoint(pX, pY);
+	}
+
+	/**
+	 * Method for getting the number of mouse positions received
+	 * @return the number of positions
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * Method for getting the number of mouse positions that were not kept
+	 * @return the number of positions
+	 */
+	public long getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Method for simplifying a stroke with the Ramer-Douglas-Peucker algorithm
+	 * @param stroke, the stroke to simplify
+	 * @param tolerance, the largest distance a removed point may have to the
+	 * simplified line
+	 * @return the number of points removed
+	 */
+	public static int simplify(Stroke stroke, double tolerance) {
+		int count = stroke.getPointCount();
+		if(count < 3) {
+			return 0;
+		}
+
+		boolean[] keep = new boolean[count];
+		keep[0] = true;
+		keep[count - 1] = true;
+
+		// ranges of points still to check, first and last point after each other
+		int[] ranges = new int[64];
+		int size = 0;
+		ranges[size++] = 0;
+		ranges[size++] = count - 1;
+		while(size > 0) {
+			int last = ranges[--size];
+			int first = ranges[--size];
+
+			// find the point furthest from the line between the ends of the range
+			double furthest = -1;
+			int index = -1;
+			for(int i = first + 1; i < last; ++i) {
+				double d = distance(stroke.getPointX(i), stroke.getPointY(i), stroke.getPointX(first),
+									stroke.getPointY(first), stroke.getPointX(last), stroke.getPointY(last));
+				if(d > furthest) {
+					furthest = d;
+					index = i;
+				}
+			}
+
+			// keep it and check both halves, or drop every point in the range
+			if(furthest > tolerance) {
+				keep[index] = true;
+				if(size + 4 > ranges.length) {
+					ranges = Arrays.copyOf(ranges, ranges.length * 2);
+				}
+				ranges[size++] = first;
+				ranges[size++] = index;
+				ranges[size++] = index;
+				ranges[size++] = last;
+			}
+		}
+
+		float[] path = new float[count * 2];
+		int length = 0;
+		for(int i = 0; i < count; ++i) {
+			if(keep[i]) {
+				path[length++] = (float)stroke.getPointX(i);
+				path[length++] = (float)stroke.getPointY(i);
+			}
+		}
+		stroke.setPath(Arrays.copyOf(path, length));
+		return count - length / 2;
+	}
+
+	/**
+	 * Method for getting the size of a drawing when saved
+	 * @param drawing, the drawing
+	 * @param binary, true for the size in the binary format, false for XML
+	 * @return the size in bytes
+	 */
+	public static long getSavedSize(Drawing drawing, boolean binary) {
+		long[] size = { 0 };
+		OutputStream counter = new OutputStream() {
+			@Override
+			public void write(int b) {
+				++size[0];
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				size[0] += len;
+			}
+		};
+
+		try {
+			if(binary) {
+				BinaryDrawing.write(drawing, counter);
+			} else {
+				DrawingWriter.write(drawing, counter);
+			}
+		} catch(IOException e) {
+			// counting cannot fail
+		}
+		return size[0];
+	}
+
+	/**
+	 * Method for getting how much smaller a value has become
+	 * @param before, the value before
+	 * @param after, the value after
+	 * @return the difference in percent of the value before
+	 */
+	public static double percentLess(long before, long after) {
+		return before == 0 ? 0 : 100.0 * (before - after) / before;
+	}
+
+	/**
+	 * Method for getting the distance from a point to a line segment
+	 * @param x, the x coordinate of the point
+	 * @param y, the y coordinate of the point
+	 * @param x1, the x coordinate of the start of the segment
+	 * @param y1, the y coordinate of the start of the segment
+	 * @param x2, the x coordinate of the end of the segment
+	 * @param y2, the y coordinate of the end of the segment
+	 * @return the distance
+	 */
+	private static double distance(double x, double y, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+		// the closest point of the segment
+		t = Math.max(0, Math.min(1, t));
+		return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+	}
+}
@@ -0,0 +1,216 @@
+package se.miun.alag1901.dt062g.jpaint;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+/**
+* <h1>TileRenderer</h1>
+* Class for rendering drawings into images without a user interface, for example
+* to export them as PNG files. The image is split into square tiles which are
+* rendered in parallel on a ForkJoinPool, each drawing only the shapes that
+* intersect it. The result is the same, pixel for pixel, as drawing the whole
+* drawing into the image with Drawing.draw(Graphics).
+* <p>
+* Java2D shifts the antialiased edges of shapes that reach far outside the clip
+* by a fraction of a pixel, so a tile cannot simply be drawn with its own clip.
+* Instead every tile is drawn into a scratch image covering the area of the
+* shapes intersecting the tile, clipped to that area, and only the tile is
+* copied to the result. The scratch images are reused by the tiles of a single
+* render and dropped when it is done.
+* <p>
+* A snapshot of the drawing is rendered, so the drawing can be changed while it
+* is being rendered.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.2
+* @since   2026-10-18
+*/
+public class TileRenderer {
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private final ForkJoinPool pool;
+	private final int tileSize;
+
+	/**
+	 * Constructor rendering on the common pool with the default tile size
+	 */
+	public TileRenderer() {
+		this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param pool, the pool to render the tiles on
+	 * @param tileSize, the width and height of the tiles in pixels
+	 */
+	public TileRenderer(ForkJoinPool pool, int tileSize) {
+		if(tileSize <= 0) {
+			throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+		}
+		this.pool = pool;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Method for rendering a drawing into a new image
+	 * @param drawing, the drawing to render
+	 * @param width, the width of the image
+	 * @param height, the height of the image
+	 * @param background, the color to fill the image with first, or null to
+	 * leave it transparent
+	 * @return the image
+	 */
+	public BufferedImage render(Drawing drawing, int width, int height, Color background) {
+		drawing = drawing.snapshot();
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		// the index is updated here, the tiles only read it
+		ShapeGrid grid = drawing.updateIndex();
+		Queue<BufferedImage> scratch = new ConcurrentLinkedQueue<BufferedImage>();
+		int columns = (width + tileSize - 1) / tileSize;
+		int rows = (height + tileSize - 1) / tileSize;
+		pool.invoke(new Tiles(drawing, grid, image, scratch, background == null ? new Color(0, true) : background,
+							  columns, 0, columns * rows));
+		return image;
+	}
+
+	/**
+	 * Method for rendering a drawing and saving it as a PNG file
+	 * @param drawing, the drawing to render
+	 * @param width, the width of the image
+	 * @param height, the height of the image
+	 * @param background, the color to fill the image with first, or null to
+	 * leave it transparent
+	 * @param file, the file to save to
+	 * @throws IOException if the file could not be written
+	 */
+	public void writePNG(Drawing drawing, int width, int height, Color background, File file) throws IOException {
+		if(!ImageIO.write(render(drawing, width, height, background), "png", file)) {
+			throw new IOException("no PNG writer available");
+		}
+	}
+
+	/**
+	 * Method for getting the size of the image needed to show every shape of a
+	 * drawing, as the drawing panel would with its upper left corner at the origin
+	 * @param drawing, the drawing
+	 * @return the size, at least one pixel in each dimension
+	 */
+	public static java.awt.Dimension getExtent(Drawing drawing) {
+		int[] extent = { 1, 1 };
+		drawing.forEachShape(shape -> {
+			java.awt.Rectangle bounds = shape.getBounds();
+			extent[0] = (int)Math.min(Integer.MAX_VALUE, Math.max(extent[0], (long)bounds.x + bounds.width));
+			extent[1] = (int)Math.min(Integer.MAX_VALUE, Math.max(extent[1], (long)bounds.y + bounds.height));
+		});
+		return new java.awt.Dimension(extent[0], extent[1]);
+	}
+
+	/**
+	* <h2>Tiles</h2>
+	* Task rendering a range of tiles, split in halves until a single tile is left
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.1
+	* @since   2026-10-18
+	*/
+	private class Tiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Drawing drawing;
+		private final ShapeGrid grid;
+		private final BufferedImage image;
+		private final Queue<BufferedImage> scratch;
+		private final Color background;
+		private final int columns, from, to;
+
+		/**
+		 * Constructor
+		 * @param drawing, the drawing to render
+		 * @param grid, the up to date index of the drawing
+		 * @param image, the image to render into
+		 * @param scratch, the scratch images not in use by a tile
+		 * @param background, the background color
+		 * @param columns, the number of tiles per row
+		 * @param from, the first tile, counted row by row
+		 * @param to, the tile after the last one
+		 */
+		Tiles(Drawing drawing, ShapeGrid grid, BufferedImage image, Queue<BufferedImage> scratch,
+			  Color background, int columns, int from, int to) {
+			this.drawing = drawing;
+			this.grid = grid;
+			this.image = image;
+			this.scratch = scratch;
+			this.background = background;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Tiles(drawing, grid, image, scratch, background, columns, from, middle),
+						  new Tiles(drawing, grid, image, scratch, background, columns, middle, to));
+				return;
+			}
+			if(to == from) {
+				return;
+			}
+
+			java.awt.Rectangle bounds = new java.awt.Rectangle(image.getWidth(), image.getHeight());
+			java.awt.Rectangle tile = new java.awt.Rectangle((from % columns) * tileSize, (from / columns) * tileSize,
+															 tileSize, tileSize).intersection(bounds);
+			// no shape drawn for the tile reaches outside this area, except outside the image
+			java.awt.Rectangle area = drawing.getBounds(tile, grid).union(tile).intersection(bounds);
+
+			BufferedImage target = takeScratch(area);
+			Graphics2D g = target.createGraphics();
+			try {
+				// the scratch image starts at the corner of the area, whole pixels keep the edges the same
+				g.translate(-area.x, -area.y);
+				g.clip(area);
+				g.setComposite(AlphaComposite.Src);
+				g.setColor(background);
+				g.fillRect(area.x, area.y, area.width, area.height);
+				g.setComposite(AlphaComposite.SrcOver);
+				drawing.draw(g, tile, grid, drawing.createViews());
+			} finally {
+				g.dispose();
+			}
+
+			// the tiles do not overlap, so they can be copied to the same image
+			Object pixels = target.getRaster().getDataElements(tile.x - area.x, tile.y - area.y,
+															   tile.width, tile.height, null);
+			image.getRaster().setDataElements(tile.x, tile.y, tile.width, tile.height, pixels);
+			scratch.offer(target);
+		}
+
+		/**
+		 * Method for getting a scratch image at least as large as an area, reusing
+		 * one left by an earlier tile if possible
+		 * @param area, the area to draw
+		 * @return the scratch image
+		 */
+		private BufferedImage takeScratch(java.awt.Rectangle area) {
+			BufferedImage target = scratch.poll();
+			if(target != null && target.getWidth() >= area.width && target.getHeight() >= area.height) {
+				return target;
+			}
+			// replace images that are too small, so the number of images stays the same
+			int width = target == null ? area.width : Math.max(area.width, target.getWidth());
+			int height = target == null ? area.height : Math.max(area.height, target.getHeight());
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		}
+	}
+}
@@ -2,13 +2,24 @@ package se.miun.alag1901.dt062g.jpaint.client;
 
 import java.net.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.DrawingPage;
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
 
 /**
 * <h1>Client</h1>
-* Class for interacting with a server managing xml files
+* Class for interacting with a server managing xml files. Commands are sent over a
+* persistent session when the server supports it, otherwise the legacy protocol
+* with one connection per command is used. Files can be read from the server
+* while they are received, so they can be parsed without waiting for the whole
+* file or saving it first.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.0
+* @version 1.3
 * @since   2020-12-30
 */
 public class Client {
@@ -22,6 +33,9 @@ public class Client {
 	private DataOutputStream out;
 	private DataInputStream in;
 	
+	private Session session;
+	private boolean legacyMode;
+	
 	/**
 	 * Constructor
 	 * @param serverAddress, the address of the server
@@ -89,11 +103,163 @@ public class Client {
 		}
 	}
 	
+	/**
+	 * Method for choosing whether the legacy protocol with one connection per
+	 * command should be used instead of a persistent session
+	 * @param legacyMode, true to use the legacy protocol
+	 */
+	public synchronized void setLegacyMode(boolean legacyMode) {
+		this.legacyMode = legacyMode;
+	}
+	
+	/**
+	 * Method for getting the session to the server, opens a new session if none is open
+	 * @return the session, or null if the legacy protocol should be used or the server could not be reached
+	 */
+	private synchronized Session getSession() {
+		if(legacyMode) {
+			return null;
+		}
+		if(session == null || !session.isOpen()) {
+			try {
+				session = Session.open(serverAddress, serverPort);
+			} catch(ProtocolException e) {
+				// server without session support, fall back on the legacy protocol
+				System.out.println("Session not available, using legacy protocol: " + e.getMessage());
+				legacyMode = true;
+				session = null;
+			} catch(IOException e) {
+				// the server could not be reached this time, try a session again next time
+				System.out.println("Failed to open session: " + e.getMessage());
+				session = null;
+			}
+		}
+		return session;
+	}
+	
+	/**
+	 * Method for closing the session to the server, if one is open
+	 */
+	public synchronized void close() {
+		if(session != null) {
+			session.close();
+			session = null;
+		}
+	}
+	
+	/**
+	 * Method for requesting the list of available files over a session
+	 * @return a future completed with the names of the available files
+	 */
+	public CompletableFuture<String[]> listAsync() {
+		Session session = getSession();
+		if(session == null) {
+			return CompletableFuture.supplyAsync(this::getFilenamesFromServer);
+		}
+		
+		return session.send(Frame.LIST, null).thenApply(response -> {
+			try {
+				DataInputStream data = checkResponse(response).payloadStream();
+				String[] fileNames = new String[data.readInt()];
+				for(int i = 0; i < fileNames.length; ++i) {
+					fileNames[i] = data.readUTF();
+				}
+				return fileNames;
+			} catch(IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Method for requesting a page of the available drawings over a session, requires
+	 * a server supporting version 3 of the session protocol
+	 * @param prefix, the prefix file names must start with, empty for all files
+	 * @param sort, one of the sort orders of DrawingPage
+	 * @param offset, the number of matching drawings to skip
+	 * @param limit, the maximum number of drawings to return
+	 * @return a future completed with the page
+	 */
+	public CompletableFuture<DrawingPage> queryAsync(String prefix, String sort, int offset, int limit) {
+		Session session = getSession();
+		if(session == null || session.getVersion() < 3) {
+			return CompletableFuture.failedFuture(new IOException("Query not supported by server"));
+		}
+		
+		return session.send(Frame.QUERY, DrawingPage.encodeQuery(prefix, sort, offset, limit))
+				.thenApply(response -> {
+			try {
+				return DrawingPage.read(checkResponse(response).payloadStream());
+			} catch(IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+	
+	/**
+	 * Method for requesting the contents of a file over a session
+	 * @param fileName, the name of the desired file
+	 * @return a future completed with the file contents, or exceptionally with a 
+	 * FileNotFoundException if the file does not exist on the server
+	 */
+	public CompletableFuture<byte[]> loadAsync(String fileName) {
+		Session session = getSession();
+		if(session == null) {
+			return CompletableFuture.failedFuture(new IOException("Session not available"));
+		}
+		
+		return session.send(Frame.LOAD, Frame.encodeString(fileName))
+				.thenApply(response -> {
+			if(response.getType() == Frame.ERROR) {
+				throw new CompletionException(new FileNotFoundException(fileName));
+			}
+			return response.getPayload();
+		});
+	}
+	
+	/**
+	 * Method for saving file contents to the server over a session
+	 * @param saveAs, the desired name of the file on the server
+	 * @param data, the contents of the file
+	 * @return a future completed with true if the file was saved
+	 */
+	public CompletableFuture<Boolean> saveAsync(String saveAs, byte[] data) {
+		Session session = getSession();
+		if(session == null) {
+			return CompletableFuture.failedFuture(new IOException("Session not available"));
+		}
+		
+		return session.send(Frame.SAVE, Frame.encodeString(saveAs), data)
+				.thenApply(response -> response.getType() == Frame.OK);
+	}
+	
+	/**
+	 * Method for checking that a response reports success
+	 * @param response, the response frame
+	 * @return the response frame
+	 * @throws IOException with the message from the server if the request failed
+	 */
+	private static Frame checkResponse(Frame response) throws IOException {
+		if(response.getType() == Frame.ERROR) {
+			throw new IOException(response.payloadStream().readUTF());
+		}
+		return response;
+	}
+	
 	/**
 	 * Method for getting list of available files on server
 	 * @return an array of the names of the available files
 	 */
 	public String[] getFilenamesFromServer() {
+		if(getSession() != null) {
+			try {
+				return listAsync().join();
+			} catch(CompletionException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
 		// return null on failure to connect
 		if(!this.connect()) {
 			return null;
@@ -129,6 +295,26 @@ public class Client {
 	 * @return the absolute path to the retrieved file
 	 */
 	public String getFileFromServer(String fileName) {
+		// save to user downloads folder (might only work on linux)
+		String filePath = System.getProperty("user.home") + "/Downloads/" + fileName;
+		
+		if(getSession() != null) {
+			try {
+				Files.write(Paths.get(filePath), loadAsync(fileName).join());
+				return filePath;
+			} catch(CompletionException e) {
+				// return empty string if file not found
+				if(e.getCause() instanceof FileNotFoundException) {
+					return "";
+				}
+				e.printStackTrace();
+				return null;
+			} catch(IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
 		if(!this.connect()) {
 			return null;
 		}
@@ -152,8 +338,6 @@ public class Client {
 			return null;
 		}
 
-		// save to user downloads folder (might only work on linux)
-		String filePath = System.getProperty("user.home") + "/Downloads/" + fileName;
 		FileOutputStream file;
 		try {
 			file = new FileOutputStream(filePath);
@@ -180,6 +364,51 @@ public class Client {
 		return filePath;
 	}
 	
+	/**
+	 * Method for reading a file from the server while it is received, without
+	 * saving it
+	 * @param fileName, the name of the desired file
+	 * @return the stream of the file contents, which must be closed
+	 * @throws FileNotFoundException if the file does not exist on the server, over
+	 * a session this is thrown when the stream is read
+	 * @throws IOException if the server cannot be reached
+	 */
+	public InputStream openFileFromServer(String fileName) throws IOException {
+		Session session = getSession();
+		if(session != null) {
+			return session.stream(Frame.LOAD, Frame.encodeString(fileName));
+		}
+		
+		if(!this.connect()) {
+			throw new IOException("Failed to connect to server");
+		}
+		
+		try {
+			this.out.writeUTF("load");
+			this.out.writeUTF(fileName);
+			
+			if(!this.in.readUTF().equals("OK")) {
+				throw new FileNotFoundException(fileName);
+			}
+		} catch(IOException e) {
+			this.disconnect();
+			throw e;
+		}
+		
+		// the server closes the connection after the file, the client disconnects when the stream is closed
+		return new FilterInputStream(this.in) {
+			private boolean closed = false;
+			
+			@Override
+			public void close() {
+				if(!closed) {
+					closed = true;
+					disconnect();
+				}
+			}
+		};
+	}
+	
 	/**
 	 * Method for saving file to server
 	 * @param fileName, the name of the file to be saved
@@ -187,6 +416,15 @@ public class Client {
 	 * @return a boolean indicating if the operation was successful
 	 */
 	public boolean saveAsFileToServer(String fileName, String saveAs) {
+		if(getSession() != null) {
+			try {
+				return saveAsync(saveAs, Files.readAllBytes(Paths.get(".", fileName))).join();
+			} catch(IOException | CompletionException e) {
+				e.printStackTrace();
+				return false;
+			}
+		}
+		
 		if(!this.connect()) {
 			return false;
 		}
@@ -0,0 +1,160 @@
+package se.miun.alag1901.dt062g.jpaint.client;
+
+import java.io.*;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+
+/**
+* <h1>LoadGenerator</h1>
+* Class for putting load on a running server to compare its execution modes.
+* A number of concurrent clients repeatedly ask for the list of drawings and
+* the achieved requests per second and latency percentiles are printed when
+* done. In the default mode oneshot every request uses the list command on a
+* new connection, in the mode session every client keeps a session open for
+* the whole run and sends framed LIST requests on it, which holds a connection
+* slot of the server for as long as the client runs.
+* Usage: LoadGenerator [address] [port] [concurrency] [seconds] [oneshot|session]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class LoadGenerator {
+
+	public static void main(String[] args) throws InterruptedException {
+		String address = args.length > 0 ? args[0] : Client.DEFAULT_ADDRESS;
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : Client.DEFAULT_PORT;
+		int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		final boolean sessions = args.length > 4 && args[4].equals("session");
+
+		final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		final AtomicLong failures = new AtomicLong();
+		final List<long[]> latencies = new ArrayList<long[]>();
+
+		System.out.println("Running " + concurrency + (sessions ? " concurrent sessions" :
+				" concurrent connections") + " against " + address + ":" + port + " for " +
+				seconds + " s");
+
+		// every thread records its own latencies to avoid contention while measuring
+		Thread[] threads = new Thread[concurrency];
+		for(int i = 0; i < concurrency; ++i) {
+			final long[][] own = { new long[1024] };
+			final int[] count = { 0 };
+			threads[i] = new Thread(() -> {
+				Session session = null;
+				while(System.nanoTime() < deadline) {
+					long start = System.nanoTime();
+					boolean listed;
+					if(sessions) {
+						// a failed session is replaced by a new one
+						if(session == null || !session.isOpen()) {
+							session = openSession(address, port);
+						}
+						listed = session != null && listInSession(session);
+					} else {
+						listed = listOnce(address, port);
+					}
+					if(!listed) {
+						failures.incrementAndGet();
+						continue;
+					}
+					if(count[0] == own[0].length) {
+						own[0] = Arrays.copyOf(own[0], count[0] * 2);
+					}
+					own[0][count[0]++] = System.nanoTime() - start;
+				}
+				if(session != null) {
+					session.close();
+				}
+				synchronized(latencies) {
+					latencies.add(Arrays.copyOf(own[0], count[0]));
+				}
+			});
+			threads[i].start();
+		}
+
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		// merge and sort the latencies of all threads
+		long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+
+		System.out.println("Requests: " + all.length + ", failed: " + failures.get());
+		System.out.printf("Requests/sec: %.1f%n", all.length / (double)seconds);
+		if(all.length > 0) {
+			System.out.printf("Latency p50: %.2f ms, p99: %.2f ms, max: %.2f ms%n",
+					percentile(all, 0.50), percentile(all, 0.99), all[all.length - 1] / 1e6);
+		}
+	}
+
+	/**
+	 * Method for performing a single list command on a new connection
+	 * @param address, the address of the server
+	 * @param port, the port of the server
+	 * @return true if the list was received, false on failure
+	 */
+	private static boolean listOnce(String address, int port) {
+		try(Socket socket = new Socket(address, port)) {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+
+			out.writeUTF("list");
+			int len = in.readInt();
+			for(int i = 0; i < len; ++i) {
+				in.readUTF();
+			}
+			return true;
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Method for opening a session used for the whole run of a client
+	 * @param address, the address of the server
+	 * @param port, the port of the server
+	 * @return the session, or null on failure
+	 */
+	private static Session openSession(String address, int port) {
+		try {
+			return Session.open(address, port);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Method for performing a single LIST request in an open session
+	 * @param session, the session
+	 * @return true if the list was received, false on failure
+	 */
+	private static boolean listInSession(Session session) {
+		try {
+			return session.send(Frame.LIST, new byte[0]).get().getType() == Frame.OK;
+		} catch(ExecutionException e) {
+			return false;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Method for getting a percentile from sorted latencies
+	 * @param sorted, the latencies in nanoseconds in ascending order
+	 * @param percentile, the percentile between 0 and 1
+	 * @return the latency in milliseconds
+	 */
+	private static double percentile(long[] sorted, double percentile) {
+		int index = (int)Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+}
@@ -0,0 +1,332 @@
+package se.miun.alag1901.dt062g.jpaint.client;
+
+import java.io.*;
+import java.net.*;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+import se.miun.alag1901.dt062g.jpaint.protocol.Transfer;
+
+/**
+* <h1>Session</h1>
+* Class for a persistent connection to the server using the framed session
+* protocol. Requests may be sent from any thread and are pipelined on the same
+* connection, a background thread reads responses and completes the future of
+* the matching request. File contents sent as a {@link Transfer} are assembled
+* before the request is completed with an OK frame holding the whole contents,
+* unless the request was sent with stream, which lets the contents be read while
+* they arrive.
+* <p>
+* Requests not answered within {@link #DEFAULT_TIMEOUT} milliseconds, set with the
+* system property jpaint.session.timeout, fail with a TimeoutException, and reading
+* a stream fails with a SocketTimeoutException when nothing arrives for as long.
+* Contents received faster than a stream is read hold up the other responses of
+* the session, for at most the same timeout, see TransferStream. Servers
+* without session support are detected by the handshake failing with a
+* ProtocolException, other errors mean the server could not be reached.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.3
+* @since   2026-10-18
+*/
+public class Session implements Closeable {
+	public static final long DEFAULT_TIMEOUT = Long.getLong("jpaint.session.timeout", 60000);
+
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+	private final int version;
+
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+	private final Map<Integer, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+	private final Map<Integer, Transfer> transfers = new ConcurrentHashMap<>();
+	private final Map<Integer, TransferStream> streams = new ConcurrentHashMap<>();
+	private volatile boolean open = true;
+
+	/**
+	 * Constructor, performs the handshake and starts reading responses
+	 * @param socket, a socket connected to the server
+	 * @throws ProtocolException if the server does not support sessions
+	 * @throws IOException if the handshake fails
+	 */
+	private Session(Socket socket) throws IOException {
+		this.socket = socket;
+		this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+		out.writeUTF(Frame.SESSION_COMMAND);
+		out.writeInt(Frame.VERSION);
+		out.flush();
+
+		// servers without session support close the connection instead of answering
+		String answer;
+		try {
+			answer = in.readUTF();
+		} catch(EOFException e) {
+			throw new ProtocolException("Server closed the connection instead of starting a session");
+		}
+		if(!answer.equals("OK")) {
+			throw new ProtocolException("Server refused session");
+		}
+		this.version = in.readInt();
+
+		Thread reader = new Thread(this::readResponses, "session-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Method for opening a session with a server
+	 * @param address, the address of the server
+	 * @param port, the port of the server
+	 * @return the open session
+	 * @throws ProtocolException if the server does not support sessions
+	 * @throws IOException if the connection or handshake fails
+	 */
+	public static Session open(String address, int port) throws IOException {
+		Socket socket = new Socket(address, port);
+		try {
+			return new Session(socket);
+		} catch(IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method for getting the protocol version agreed with the server
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Method for checking if the session can still be used
+	 * @return true if the session is open
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Method for sending a request
+	 * @param type, the type of request
+	 * @param payload, the payload of the request
+	 * @return a future completed with the response frame
+	 */
+	public CompletableFuture<Frame> send(byte type, byte[] payload) {
+		return send(type, payload, null);
+	}
+
+	/**
+	 * Method for sending a request followed by file contents. With protocol version 2
+	 * and later the contents are sent as a transfer, otherwise they are appended to
+	 * the payload of the request
+	 * @param type, the type of request
+	 * @param payload, the payload of the request
+	 * @param contents, the file contents to send, or null
+	 * @return a future completed with the response frame, or exceptionally with a
+	 * TimeoutException if no response arrives within the timeout
+	 */
+	public CompletableFuture<Frame> send(byte type, byte[] payload, byte[] contents) {
+		if(contents != null && version < 2) {
+			byte[] joined = new byte[payload.length + contents.length];
+			System.arraycopy(payload, 0, joined, 0, payload.length);
+			System.arraycopy(contents, 0, joined, payload.length, contents.length);
+			payload = joined;
+			contents = null;
+		}
+
+		int id = nextRequestId.incrementAndGet();
+		CompletableFuture<Frame> response = new CompletableFuture<>();
+		pending.put(id, response);
+		// a request that timed out is forgotten, its response is ignored if it arrives later
+		response.orTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)
+				.whenComplete((frame, e) -> pending.remove(id));
+
+		if(!open) {
+			fail(new IOException("Session is closed"));
+			return response;
+		}
+
+		try {
+			synchronized(out) {
+				new Frame(id, type, payload).write(out);
+			}
+			if(contents != null) {
+				Transfer.write(out, id, contents);
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+		return response;
+	}
+
+	/**
+	 * Method for sending a request answered with file contents, such as LOAD, and
+	 * reading the contents while they are received. An error response is reported
+	 * as a FileNotFoundException when the stream is read, since the server only
+	 * refuses to send contents that do not exist
+	 * @param type, the type of request
+	 * @param payload, the payload of the request
+	 * @return the stream of the contents, closing it before the end ignores the rest
+	 */
+	public InputStream stream(byte type, byte[] payload) {
+		int id = nextRequestId.incrementAndGet();
+		TransferStream stream = new TransferStream(() -> streams.remove(id));
+		streams.put(id, stream);
+
+		if(!open) {
+			fail(new IOException("Session is closed"));
+			return stream;
+		}
+
+		try {
+			synchronized(out) {
+				new Frame(id, type, payload).write(out);
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+		return stream;
+	}
+
+	/**
+	 * Method run by the reader thread, dispatches responses to their requests
+	 */
+	private void readResponses() {
+		try {
+			while(open) {
+				Frame response = Frame.read(in);
+				int id = response.getRequestId();
+
+				TransferStream stream = streams.get(id);
+				if(stream != null) {
+					receive(stream, response);
+					continue;
+				}
+
+				try {
+					switch(response.getType()) {
+						case Frame.BEGIN: {
+							transfers.put(id, Transfer.begin(response));
+							continue;
+						}
+						case Frame.CHUNK: {
+							getTransfer(id).append(response);
+							continue;
+						}
+						case Frame.END: {
+							response = new Frame(id, Frame.OK, getTransfer(id).finish(response));
+							transfers.remove(id);
+							break;
+						}
+					}
+				} catch(IOException e) {
+					// only the request with the broken transfer fails
+					transfers.remove(id);
+					CompletableFuture<Frame> request = pending.remove(id);
+					if(request != null) {
+						request.completeExceptionally(e);
+					}
+					continue;
+				}
+
+				CompletableFuture<Frame> request = pending.remove(id);
+				if(request != null) {
+					request.complete(response);
+				}
+			}
+		} catch(IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Method for passing a response to the stream of its request
+	 * @param stream, the stream
+	 * @param response, the response frame
+	 */
+	private void receive(TransferStream stream, Frame response) {
+		int id = response.getRequestId();
+		try {
+			switch(response.getType()) {
+				case Frame.BEGIN: {
+					stream.begin(response);
+					return;
+				}
+				case Frame.CHUNK: {
+					stream.append(response);
+					return;
+				}
+				case Frame.END: {
+					stream.finish(response);
+					break;
+				}
+				case Frame.OK: {
+					// the whole contents in one frame, protocol version 1
+					stream.complete(response.getPayload());
+					break;
+				}
+				default: {
+					stream.fail(new FileNotFoundException("Request " + id + " refused by server"));
+				}
+			}
+		} catch(IOException e) {
+			// only the request with the broken transfer fails
+			stream.fail(e);
+		}
+		streams.remove(id);
+	}
+
+	/**
+	 * Method for getting a transfer in progress
+	 * @param id, the request id of the transfer
+	 * @return the transfer
+	 * @throws IOException if no transfer with the id has been started
+	 */
+	private Transfer getTransfer(int id) throws IOException {
+		Transfer transfer = transfers.get(id);
+		if(transfer == null) {
+			throw new IOException("No transfer started for request " + id);
+		}
+		return transfer;
+	}
+
+	/**
+	 * Method for closing the session after an error, fails all pending requests
+	 * @param cause, the reason the session failed
+	 */
+	private void fail(IOException cause) {
+		open = false;
+		for(Integer id : pending.keySet()) {
+			CompletableFuture<Frame> request = pending.remove(id);
+			Transfer transfer = transfers.remove(id);
+			if(request != null) {
+				// report interrupted transfers as truncated rather than waiting for a timeout
+				request.completeExceptionally(transfer != null ? transfer.truncated() : cause);
+			}
+		}
+		for(Integer id : streams.keySet()) {
+			TransferStream stream = streams.remove(id);
+			if(stream != null) {
+				stream.fail(stream.interrupted(cause));
+			}
+		}
+		try {
+			socket.close();
+		} catch(IOException e) {
+			// already closing because of an error
+		}
+	}
+
+	@Override
+	public void close() {
+		fail(new IOException("Session closed"));
+	}
+}
@@ -0,0 +1,234 @@
+package se.miun.alag1901.dt062g.jpaint.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+
+/**
+* <h1>TransferStream</h1>
+* Class for reading the contents of a transfer while it is being received. The
+* reader thread of the session adds every chunk as it arrives and the contents
+* can be read from another thread at the same time, so they can be parsed
+* without waiting for the whole transfer. The length and checksum are checked
+* as with a whole transfer, and reading fails if they are wrong or the session
+* fails, after the contents received before that.
+* <p>
+* At most {@link #MAX_QUEUED_CHUNKS} chunks wait to be read, after that the reader
+* thread of the session waits for the contents to be read. Both sides wait at most
+* {@link Session#DEFAULT_TIMEOUT} milliseconds, then the transfer fails.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class TransferStream extends InputStream {
+	public static final int MAX_QUEUED_CHUNKS = 64;
+	// added to the chunks after the last one, or after a failure
+	private static final byte[] END = new byte[0];
+
+	private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<byte[]>();
+	// a permit per chunk that may be queued, the end marker needs none
+	private final Semaphore space = new Semaphore(MAX_QUEUED_CHUNKS);
+	private final Runnable onClose;
+	private volatile IOException failure;
+
+	// used by the reader thread of the session only
+	private final CRC32 checksum = new CRC32();
+	private long length = -1;
+	private long received = 0;
+
+	// used by the thread reading the contents only
+	private byte[] current;
+	private int position;
+	private boolean ended = false;
+
+	/**
+	 * Constructor
+	 * @param onClose, run when the stream is closed before the transfer ends
+	 */
+	TransferStream(Runnable onClose) {
+		this.onClose = onClose;
+	}
+
+	/**
+	 * Method for starting to receive the transfer
+	 * @param begin, the BEGIN frame of the transfer
+	 * @throws IOException if the length is invalid
+	 */
+	void begin(Frame begin) throws IOException {
+		length = begin.payloadStream().readLong();
+		if(length < 0) {
+			throw new IOException("Invalid transfer length: " + length);
+		}
+	}
+
+	/**
+	 * Method for adding a received CHUNK frame, which can be read right away, waits
+	 * while too many chunks are not yet read
+	 * @param chunk, the CHUNK frame
+	 * @throws IOException if the transfer has not begun, the chunk exceeds the announced
+	 * length or the contents are not read within the timeout
+	 */
+	void append(Frame chunk) throws IOException {
+		byte[] payload = chunk.getPayload();
+		if(length < 0) {
+			throw new IOException("No transfer started for request " + chunk.getRequestId());
+		}
+		if(payload.length > length - received) {
+			throw new IOException("Transfer exceeds announced length of " + length + " bytes");
+		}
+
+		checksum.update(payload, 0, payload.length);
+		received += payload.length;
+		queue(payload);
+	}
+
+	/**
+	 * Method for completing the transfer, verifies the length and checksum
+	 * @param end, the END frame of the transfer
+	 * @throws IOException if the transfer is truncated or corrupt
+	 */
+	void finish(Frame end) throws IOException {
+		if(received != length) {
+			throw truncated();
+		}
+		if(end.payloadStream().readLong() != checksum.getValue()) {
+			throw new IOException("Checksum mismatch in transfer of " + length + " bytes");
+		}
+		chunks.add(END);
+	}
+
+	/**
+	 * Method for receiving the whole contents at once, as sent by servers using
+	 * protocol version 1
+	 * @param contents, the contents
+	 * @throws IOException if the contents are not read within the timeout
+	 */
+	void complete(byte[] contents) throws IOException {
+		queue(contents);
+		chunks.add(END);
+	}
+
+	/**
+	 * Method for queueing received contents to be read
+	 * @param contents, the contents
+	 * @throws IOException if there is no room for them within the timeout
+	 */
+	private void queue(byte[] contents) throws IOException {
+		try {
+			if(!space.tryAcquire(Session.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				throw new SocketTimeoutException("Transfer not read within " + Session.DEFAULT_TIMEOUT + " ms");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for transfer to be read");
+		}
+		chunks.add(contents);
+	}
+
+	/**
+	 * Method for making reading fail once the contents received so far are read
+	 * @param cause, the reason the transfer failed
+	 */
+	void fail(IOException cause) {
+		failure = cause;
+		chunks.add(END);
+	}
+
+	/**
+	 * Method for creating the exception reported when the transfer ends too early
+	 * @return the exception
+	 */
+	IOException truncated() {
+		return new IOException("Transfer truncated after " + received + " of " + length + " bytes");
+	}
+
+	/**
+	 * Method for creating the exception reported when the session fails during the transfer
+	 * @param cause, the reason the session failed
+	 * @return the exception, telling how much was received if the transfer had begun
+	 */
+	IOException interrupted(IOException cause) {
+		return length < 0 ? cause : truncated();
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+
+		while(current == null || position == current.length) {
+			if(ended) {
+				return endOfStream();
+			}
+			try {
+				// waits for the next chunk to arrive
+				current = chunks.poll(Session.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for transfer");
+			}
+			if(current == null) {
+				// the rest of the transfer is ignored and reading keeps failing
+				failure = new SocketTimeoutException("No contents received within " + Session.DEFAULT_TIMEOUT + " ms");
+				close();
+				return endOfStream();
+			}
+			position = 0;
+			if(current == END) {
+				ended = true;
+				current = null;
+			} else {
+				space.release();
+			}
+		}
+
+		int count = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return current == null ? 0 : current.length - position;
+	}
+
+	/**
+	 * Method for ending the stream, with the failure of the transfer if any
+	 * @return -1
+	 * @throws IOException if the transfer failed
+	 */
+	private int endOfStream() throws IOException {
+		if(failure != null) {
+			throw failure;
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() {
+		if(!ended) {
+			// the rest of the transfer is ignored, a reader thread waiting for room stops waiting
+			ended = true;
+			chunks.clear();
+			space.release(MAX_QUEUED_CHUNKS);
+			onClose.run();
+		}
+	}
+}
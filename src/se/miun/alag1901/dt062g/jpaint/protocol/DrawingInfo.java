@@ -0,0 +1,119 @@
+package se.miun.alag1901.dt062g.jpaint.protocol;
+
+import java.io.*;
+
+/**
+* <h1>DrawingInfo</h1>
+* Class describing a drawing available on the server, as sent in the response
+* to a {@link Frame#QUERY} request.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class DrawingInfo {
+	private final String fileName;
+	private final long size;
+	private final long lastModified;
+	private final int shapeCount;
+	private final String name;
+	private final String author;
+
+	/**
+	 * Constructor
+	 * @param fileName, the name of the file
+	 * @param size, the size of the file in bytes
+	 * @param lastModified, the time the file was last modified in milliseconds since the epoch
+	 * @param shapeCount, the number of shapes in the drawing
+	 * @param name, the name of the drawing
+	 * @param author, the author of the drawing
+	 */
+	public DrawingInfo(String fileName, long size, long lastModified, int shapeCount,
+			String name, String author) {
+		this.fileName = fileName;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.shapeCount = shapeCount;
+		this.name = name == null ? "" : name;
+		this.author = author == null ? "" : author;
+	}
+
+	/**
+	 * Method for getting the name of the file
+	 * @return the file name
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Method for getting the size of the file
+	 * @return the size in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Method for getting the time the file was last modified
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Method for getting the number of shapes in the drawing
+	 * @return the number of shapes
+	 */
+	public int getShapeCount() {
+		return shapeCount;
+	}
+
+	/**
+	 * Method for getting the name of the drawing
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Method for getting the author of the drawing
+	 * @return the author
+	 */
+	public String getAuthor() {
+		return author;
+	}
+
+	/**
+	 * Method for writing the info to a stream
+	 * @param out, the stream to write to
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeUTF(fileName);
+		out.writeLong(size);
+		out.writeLong(lastModified);
+		out.writeInt(shapeCount);
+		out.writeUTF(name);
+		out.writeUTF(author);
+	}
+
+	/**
+	 * Method for reading info written by write
+	 * @param in, the stream to read from
+	 * @return the info
+	 * @throws IOException
+	 */
+	public static DrawingInfo read(DataInputStream in) throws IOException {
+		return new DrawingInfo(in.readUTF(), in.readLong(), in.readLong(), in.readInt(),
+				in.readUTF(), in.readUTF());
+	}
+
+	@Override
+	public String toString() {
+		return "DrawingInfo[file=" + fileName + "; size=" + size + "; modified=" + lastModified
+			   + "; shapes=" + shapeCount + "; name=" + name + "; author=" + author + "]";
+	}
+}
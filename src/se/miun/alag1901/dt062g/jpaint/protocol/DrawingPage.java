@@ -0,0 +1,108 @@
+package se.miun.alag1901.dt062g.jpaint.protocol;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+* <h1>DrawingPage</h1>
+* Class representing one page of the drawings matching a {@link Frame#QUERY}
+* request. The request payload holds the file name prefix, the sort order, the
+* offset and the maximum number of drawings to return. The response holds the
+* total number of matching drawings followed by the drawings of the page.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class DrawingPage {
+	// sort orders, anything but name sorts the largest or newest first
+	public static final String SORT_NAME = "name";
+	public static final String SORT_MODIFIED = "modified";
+	public static final String SORT_SIZE = "size";
+	public static final String SORT_SHAPES = "shapes";
+
+	private final int total;
+	private final List<DrawingInfo> drawings;
+
+	/**
+	 * Constructor
+	 * @param total, the total number of matching drawings
+	 * @param drawings, the drawings of this page
+	 */
+	public DrawingPage(int total, List<DrawingInfo> drawings) {
+		this.total = total;
+		this.drawings = Collections.unmodifiableList(drawings);
+	}
+
+	/**
+	 * Method for getting the total number of matching drawings
+	 * @return the total number
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Method for getting the drawings of this page
+	 * @return the drawings
+	 */
+	public List<DrawingInfo> getDrawings() {
+		return drawings;
+	}
+
+	/**
+	 * Method for encoding a query request payload
+	 * @param prefix, the prefix file names must start with, empty for all files
+	 * @param sort, one of the sort orders
+	 * @param offset, the number of matching drawings to skip
+	 * @param limit, the maximum number of drawings to return
+	 * @return the payload
+	 */
+	public static byte[] encodeQuery(String prefix, String sort, int offset, int limit) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			data.writeUTF(prefix);
+			data.writeUTF(sort);
+			data.writeInt(offset);
+			data.writeInt(limit);
+		} catch(IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method for encoding the page as a response payload
+	 * @return the payload
+	 * @throws IOException
+	 */
+	public byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(total);
+		data.writeInt(drawings.size());
+		for(DrawingInfo drawing : drawings) {
+			drawing.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method for decoding a response payload
+	 * @param in, a stream over the payload
+	 * @return the page
+	 * @throws IOException
+	 */
+	public static DrawingPage read(DataInputStream in) throws IOException {
+		int total = in.readInt();
+		int count = in.readInt();
+		List<DrawingInfo> drawings = new ArrayList<DrawingInfo>(count);
+		for(int i = 0; i < count; ++i) {
+			drawings.add(DrawingInfo.read(in));
+		}
+		return new DrawingPage(total, drawings);
+	}
+}
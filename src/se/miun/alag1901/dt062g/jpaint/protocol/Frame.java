@@ -0,0 +1,181 @@
+package se.miun.alag1901.dt062g.jpaint.protocol;
+
+import java.io.*;
+
+/**
+* <h1>Frame</h1>
+* Class representing a single message of the session protocol shared by client
+* and server. A session starts with the legacy command {@value #SESSION_COMMAND}
+* followed by the protocol version wanted by the client, the server answers with
+* "OK" and the version it will use. After that both sides exchange frames on the
+* form [request id (int)][type (byte)][payload length (int)][payload], which lets a
+* single connection carry many pipelined requests. Responses carry the id of the
+* request they answer and may arrive in any order.
+* <p>
+* In version 1 file contents are sent as the payload of a single frame, from
+* version 2 they are sent as a {@link Transfer} with explicit length and checksum.
+* Version 3 adds {@link #QUERY} requests for a page of the available drawings.
+* <p>
+* Frames longer than {@link #MAX_FRAME_LENGTH} are refused before their payload
+* is allocated, set with the system property jpaint.frame.max. In version 1 this
+* also limits the size of files.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class Frame {
+	public static final String SESSION_COMMAND = "session";
+	public static final int VERSION = 3;
+	public static final int MAX_FRAME_LENGTH = Integer.getInteger("jpaint.frame.max", 64 * 1024 * 1024);
+
+	// request types
+	public static final byte LIST = 1;
+	public static final byte LOAD = 2;
+	public static final byte SAVE = 3;
+	// version 3 and later
+	public static final byte QUERY = 4;
+
+	// transfer of file contents, version 2 and later
+	public static final byte BEGIN = 32;
+	public static final byte CHUNK = 33;
+	public static final byte END = 34;
+
+	// response types
+	public static final byte OK = 64;
+	public static final byte ERROR = 65;
+
+	private final int requestId;
+	private final byte type;
+	private final byte[] payload;
+
+	/**
+	 * Constructor
+	 * @param requestId, the id of the request the frame belongs to
+	 * @param type, the type of the frame
+	 * @param payload, the payload of the frame
+	 */
+	public Frame(int requestId, byte type, byte[] payload) {
+		this.requestId = requestId;
+		this.type = type;
+		this.payload = payload == null ? new byte[0] : payload;
+	}
+
+	/**
+	 * Method for creating a frame with a single string as payload
+	 * @param requestId, the id of the request the frame belongs to
+	 * @param type, the type of the frame
+	 * @param text, the string to send
+	 * @return the frame
+	 */
+	public static Frame ofString(int requestId, byte type, String text) {
+		return new Frame(requestId, type, encodeString(text));
+	}
+
+	/**
+	 * Method for encoding a string the same way as DataOutputStream.writeUTF
+	 * @param text, the string to encode
+	 * @return the encoded string
+	 */
+	public static byte[] encodeString(String text) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new DataOutputStream(bytes).writeUTF(text);
+		} catch(IOException e) {
+			// writing to a byte array never fails, but strings too long for writeUTF do
+			throw new IllegalArgumentException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method for getting the request id
+	 * @return the request id
+	 */
+	public int getRequestId() {
+		return requestId;
+	}
+
+	/**
+	 * Method for getting the frame type
+	 * @return the type
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Method for getting the payload
+	 * @return the payload
+	 */
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Method for reading the payload using a DataInputStream
+	 * @return a stream over the payload
+	 */
+	public DataInputStream payloadStream() {
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+
+	/**
+	 * Method for reading a frame from a stream, blocks until a whole frame is read
+	 * @param in, the stream to read from
+	 * @return the frame
+	 * @throws IOException, EOFException if the stream ends before a frame starts, or if
+	 * the length of the frame is invalid or above MAX_FRAME_LENGTH
+	 */
+	public static Frame read(DataInputStream in) throws IOException {
+		int requestId = in.readInt();
+		byte type = in.readByte();
+		int length = in.readInt();
+
+		if(length < 0 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid frame length: " + length);
+		}
+
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return new Frame(requestId, type, payload);
+	}
+
+	/**
+	 * Method for writing the frame to a stream. Callers sharing a stream between
+	 * threads must synchronize on it so frames are not interleaved
+	 * @param out, the stream to write to
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		writeHeader(out, requestId, type, payload.length);
+		out.write(payload);
+		out.flush();
+	}
+
+	/**
+	 * Method for writing only the header of a frame, for payloads that are written
+	 * separately, e.g. straight to the socket channel. The stream is not flushed
+	 * @param out, the stream to write to
+	 * @param requestId, the id of the request the frame belongs to
+	 * @param type, the type of the frame
+	 * @param length, the length of the payload that will follow
+	 * @throws IOException
+	 */
+	public static void writeHeader(DataOutputStream out, int requestId, byte type, int length)
+			throws IOException {
+		// send header in a single write to avoid small packets
+		byte[] header = new byte[9];
+		header[0] = (byte)(requestId >>> 24);
+		header[1] = (byte)(requestId >>> 16);
+		header[2] = (byte)(requestId >>> 8);
+		header[3] = (byte)requestId;
+		header[4] = type;
+		header[5] = (byte)(length >>> 24);
+		header[6] = (byte)(length >>> 16);
+		header[7] = (byte)(length >>> 8);
+		header[8] = (byte)length;
+
+		out.write(header);
+	}
+}
@@ -0,0 +1,246 @@
+package se.miun.alag1901.dt062g.jpaint.protocol;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+* <h1>Transfer</h1>
+* Class for sending and receiving file contents over a session (protocol version 2
+* and later). A transfer consists of a {@link Frame#BEGIN} frame with the total length
+* of the contents, any number of {@link Frame#CHUNK} frames and an {@link Frame#END}
+* frame with the CRC32 checksum of the contents, all carrying the id of the request
+* they belong to. Since every frame is written separately, transfers of different
+* requests may be interleaved on the same connection.
+* A receiver may refuse transfers longer than it is willing to hold in memory.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.3
+* @since   2026-10-18
+*/
+public class Transfer {
+	public static final int CHUNK_SIZE = 64 * 1024;
+	public static final long MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final byte[] data;
+	private final CRC32 checksum = new CRC32();
+	private int received = 0;
+
+	/**
+	 * Constructor for receiving a transfer, pre-sizes the buffer from the header
+	 * @param length, the total length announced by the sender
+	 * @throws IOException if the length is invalid
+	 */
+	private Transfer(long length) throws IOException {
+		if(length < 0 || length > MAX_LENGTH) {
+			throw new IOException("Invalid transfer length: " + length);
+		}
+		this.data = new byte[(int)length];
+	}
+
+	/**
+	 * Method for starting to receive a transfer
+	 * @param begin, the BEGIN frame of the transfer
+	 * @return the transfer
+	 * @throws IOException if the frame is not a valid BEGIN frame
+	 */
+	public static Transfer begin(Frame begin) throws IOException {
+		return begin(begin, MAX_LENGTH);
+	}
+
+	/**
+	 * Method for starting to receive a transfer no longer than a limit, checked
+	 * before the buffer is allocated
+	 * @param begin, the BEGIN frame of the transfer
+	 * @param maxLength, the longest transfer accepted
+	 * @return the transfer
+	 * @throws IOException if the frame is not a valid BEGIN frame or announces more than the limit
+	 */
+	public static Transfer begin(Frame begin, long maxLength) throws IOException {
+		if(begin.getType() != Frame.BEGIN) {
+			throw new IOException("Expected start of transfer, got frame type " + begin.getType());
+		}
+		long length = begin.payloadStream().readLong();
+		if(length > Math.min(maxLength, MAX_LENGTH)) {
+			throw new IOException("Transfer of " + length + " bytes exceeds limit of " + maxLength + " bytes");
+		}
+		return new Transfer(length);
+	}
+
+	/**
+	 * Method for getting the total length of the contents being received
+	 * @return the length in bytes
+	 */
+	public int getLength() {
+		return data.length;
+	}
+
+	/**
+	 * Method for adding a received CHUNK frame to the transfer
+	 * @param chunk, the CHUNK frame
+	 * @throws IOException if the chunk exceeds the announced length
+	 */
+	public void append(Frame chunk) throws IOException {
+		byte[] payload = chunk.getPayload();
+		if(payload.length > data.length - received) {
+			throw new IOException("Transfer exceeds announced length of " + data.length + " bytes");
+		}
+
+		System.arraycopy(payload, 0, data, received, payload.length);
+		checksum.update(payload, 0, payload.length);
+		received += payload.length;
+	}
+
+	/**
+	 * Method for completing the transfer, verifies the length and checksum
+	 * @param end, the END frame of the transfer
+	 * @return the received contents
+	 * @throws IOException if the transfer is truncated or corrupt
+	 */
+	public byte[] finish(Frame end) throws IOException {
+		if(received != data.length) {
+			throw truncated();
+		}
+		if(end.payloadStream().readLong() != checksum.getValue()) {
+			throw new IOException("Checksum mismatch in transfer of " + data.length + " bytes");
+		}
+		return data;
+	}
+
+	/**
+	 * Method for creating the exception reported when a transfer ends too early
+	 * @return the exception
+	 */
+	public IOException truncated() {
+		return new IOException("Transfer truncated after " + received + " of " + data.length + " bytes");
+	}
+
+	/**
+	 * Method for sending contents as a transfer. Every frame is written while
+	 * holding the lock of the stream, so other threads may write frames in between
+	 * @param out, the stream to write to
+	 * @param requestId, the id of the request the transfer belongs to
+	 * @param data, the contents to send
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, int requestId, byte[] data) throws IOException {
+		CRC32 checksum = new CRC32();
+
+		synchronized(out) {
+			new Frame(requestId, Frame.BEGIN, longBytes(data.length)).write(out);
+		}
+
+		for(int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, data.length - offset);
+			byte[] chunk = new byte[length];
+			System.arraycopy(data, offset, chunk, 0, length);
+			checksum.update(chunk);
+
+			synchronized(out) {
+				new Frame(requestId, Frame.CHUNK, chunk).write(out);
+			}
+		}
+
+		synchronized(out) {
+			new Frame(requestId, Frame.END, longBytes(checksum.getValue())).write(out);
+		}
+	}
+
+	/**
+	 * Method for sending a file as a transfer, one chunk at a time through the heap so
+	 * the file never has to be held in memory. Every frame is written while holding
+	 * the lock of the stream
+	 * @param out, the stream to write to
+	 * @param requestId, the id of the request the transfer belongs to
+	 * @param file, the file to send, from its start to its size when called
+	 * @throws IOException if the file cannot be read or gets shorter while it is sent
+	 */
+	public static void write(DataOutputStream out, int requestId, FileChannel file) throws IOException {
+		CRC32 checksum = new CRC32();
+		long length = file.size();
+		if(length > MAX_LENGTH) {
+			throw new IOException("File of " + length + " bytes too large to transfer");
+		}
+
+		synchronized(out) {
+			new Frame(requestId, Frame.BEGIN, longBytes(length)).write(out);
+		}
+
+		byte[] chunk = new byte[(int)Math.min(CHUNK_SIZE, length)];
+		for(long offset = 0; offset < length; ) {
+			ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, (int)Math.min(CHUNK_SIZE, length - offset));
+			while(buffer.hasRemaining()) {
+				if(file.read(buffer, offset + buffer.position()) < 0) {
+					throw new IOException("File changed while being sent");
+				}
+			}
+			checksum.update(chunk, 0, buffer.limit());
+			offset += buffer.limit();
+
+			synchronized(out) {
+				Frame.writeHeader(out, requestId, Frame.CHUNK, buffer.limit());
+				out.write(chunk, 0, buffer.limit());
+				out.flush();
+			}
+		}
+
+		synchronized(out) {
+			new Frame(requestId, Frame.END, longBytes(checksum.getValue())).write(out);
+		}
+	}
+
+	/**
+	 * Method for sending contents held in a ByteBuffer, such as a memory mapped file,
+	 * as a transfer. Chunks are written straight to the channel without copying them
+	 * to the heap. Every frame is written while holding the lock of the stream
+	 * @param out, the stream to write frame headers to
+	 * @param channel, the channel of the same connection to write chunks to
+	 * @param requestId, the id of the request the transfer belongs to
+	 * @param data, the contents to send, from its position to its limit
+	 * @throws IOException
+	 */
+	public static void write(DataOutputStream out, WritableByteChannel channel, int requestId,
+			ByteBuffer data) throws IOException {
+		CRC32 checksum = new CRC32();
+		int start = data.position();
+		int length = data.remaining();
+
+		synchronized(out) {
+			new Frame(requestId, Frame.BEGIN, longBytes(length)).write(out);
+		}
+
+		for(int offset = 0; offset < length; offset += CHUNK_SIZE) {
+			ByteBuffer chunk = data.duplicate();
+			chunk.position(start + offset).limit(start + Math.min(length, offset + CHUNK_SIZE));
+			checksum.update(chunk.duplicate());
+
+			synchronized(out) {
+				Frame.writeHeader(out, requestId, Frame.CHUNK, chunk.remaining());
+				out.flush();
+				while(chunk.hasRemaining()) {
+					channel.write(chunk);
+				}
+			}
+		}
+
+		synchronized(out) {
+			new Frame(requestId, Frame.END, longBytes(checksum.getValue())).write(out);
+		}
+	}
+
+	/**
+	 * Method for encoding a long the same way as DataOutputStream.writeLong
+	 * @param value, the value to encode
+	 * @return the encoded value
+	 */
+	private static byte[] longBytes(long value) {
+		byte[] bytes = new byte[8];
+		for(int i = 7; i >= 0; --i) {
+			bytes[i] = (byte)value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+}
@@ -2,16 +2,56 @@ package se.miun.alag1901.dt062g.jpaint.server;
 
 import java.net.*;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.DrawingPage;
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+import se.miun.alag1901.dt062g.jpaint.protocol.Transfer;
 
 /**
 * <h1>ClientHandler</h1>
-* Class for managing client requests in a separate thread from the main server thread
+* Class for managing client requests, executed as a task by a ConnectionExecutor
+* separately from the main server thread. A session may have at most
+* {@link #MAX_TRANSFERS} saves waiting for their contents at once, see
+* {@link SaveTransfers}, and saved files may be at most {@link #MAX_SAVE_LENGTH}
+* bytes, set with the system property jpaint.save.max. Larger saves are answered
+* with ERROR in a session, and the connection is closed during a one-shot save.
+* <p>
+* Saved files are written to a temporary file that replaces the file when done,
+* so files being sent are never changed in place. Files too large to cache are
+* memory mapped only when they are hot, others are sent in chunks from disk.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.1
+* @version 1.12
 * @since   2021-01-10
 */
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable {
+	// maximum number of requests a session may have in progress at once
+	private static final int MAX_IN_FLIGHT = 32;
+	// maximum number of saves of a session waiting for their contents, and the largest file saved
+	static final int MAX_TRANSFERS = 32;
+	static final long MAX_SAVE_LENGTH = Long.getLong("jpaint.save.max", 256L * 1024 * 1024);
+
+	// shared workers executing session requests, so pipelined requests run concurrently
+	private static final ExecutorService REQUEST_POOL = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors() * 2, task -> {
+				Thread thread = new Thread(task, "session-worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+
 	private Socket socket;	
 	private String address;
 	
@@ -58,46 +98,69 @@ public class ClientHandler extends Thread {
 			return;
 		}
 		
-		// perform requested action
-		switch(command) {
-			case "list": {
-				try {
-					listFiles(out, in);
-				} catch(IOException e) {
-					System.out.println("Failed to list files for client at " +
-							this.address + " err: " + e.getMessage());
-					e.printStackTrace();
-				}
-				break;
+		try {
+			// perform requested action
+			switch(command) {
+				case "list": {
+					try {
+						listFiles(out, in);
+					} catch(IOException e) {
+						System.out.println("Failed to list files for client at " +
+								this.address + " err: " + e.getMessage());
+						e.printStackTrace();
+					}
+					break;
 				
-			}
-			case "load": {
-				try {
-					loadFile(out, in);
-				} catch(IOException e) {
-					System.out.println("Failed to load file for client at " +
-							this.address + " err: " + e.getMessage());
-					e.printStackTrace();
 				}
-				break;
-			}
-			case "save": {
-				try {
-					saveFile(out, in);
-				} catch(IOException e) {
-					System.out.println("Failed to save file for client at " +
-							this.address + " err: " + e.getMessage());
-					e.printStackTrace();
+				case "load": {
+					try {
+						loadFile(out, in);
+					} catch(IOException e) {
+						System.out.println("Failed to load file for client at " +
+								this.address + " err: " + e.getMessage());
+						e.printStackTrace();
+					}
+					break;
+				}
+				case "save": {
+					try {
+						saveFile(out, in);
+					} catch(IOException e) {
+						System.out.println("Failed to save file for client at " +
+								this.address + " err: " + e.getMessage());
+						e.printStackTrace();
+					}
+					break;				
+				}
+				case "stats": {
+					try {
+						out.writeUTF(FileCache.getShared().toString());
+					} catch(IOException e) {
+						System.out.println("Failed to send statistics to client at " +
+								this.address + " err: " + e.getMessage());
+					}
+					break;
+				}
+				case Frame.SESSION_COMMAND: {
+					try {
+						// frames are flushed whole, so a header never waits for an ack alone
+						serveSession(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), in);
+					} catch(IOException | RuntimeException e) {
+						// the connection is closed below either way
+						System.out.println("Session with client at " +
+								this.address + " failed, err: " + e.getMessage());
+					}
+					break;
+				}
+				default: {
+					System.out.println("Invalid command: " + command + " from client at " + 
+							this.address);
 				}
-				break;				
-			}
-			default: {
-				System.out.println("Invalid command: " + command + " from client at " + 
-						this.address);
 			}
+		} finally {
+			// close connection after each command (or session) has been executed, also after unexpected errors
+			closeConnection(out, in);
 		}
-		// close connection after each command has been executed
-		closeConnection(out, in);
 	}
 	
 	/**
@@ -107,12 +170,7 @@ public class ClientHandler extends Thread {
 	 * @throws IOException
 	 */
 	private void listFiles(DataOutputStream out, DataInputStream in) throws IOException {
-		File directory = new File("xml");
-		
-		// use list to filter out non-xml files
-		String[] xmlFiles = directory.list((dir, name) -> {
-			return name.endsWith(".xml");
-		});
+		String[] xmlFiles = getFileNames();
 		
 		// send length of array to client before sending actual data
 		int len = xmlFiles == null ? 0 : xmlFiles.length;
@@ -126,6 +184,14 @@ public class ClientHandler extends Thread {
 		}
 	}
 
+	/**
+	 * Method for getting the names of the available files
+	 * @return the names of the xml files, or null if the directory cannot be read
+	 */
+	static String[] getFileNames() {
+		return DrawingIndex.getShared().getFileNames();
+	}
+
 	/**
 	 * Method for providing client with a requested file
 	 * @param out, an output stream object to the client
@@ -139,6 +205,20 @@ public class ClientHandler extends Thread {
 		// client first sends name of desired file
 		fileName = in.readUTF();
 		
+		// serve popular files from memory
+		byte[] cached;
+		try {
+			cached = FileCache.getShared().get(fileName);
+		} catch(NoSuchFileException e) {
+			cached = null;
+		}
+		if(cached != null) {
+			System.out.println("Sending cached file " + fileName + " to client at " + this.address);
+			out.writeUTF("OK");
+			out.write(cached);
+			return;
+		}
+		
 		// try to open requested file, inform client if successful
 		try {
 			fileInput = new FileInputStream(new File("./xml/" + fileName));
@@ -149,17 +229,52 @@ public class ClientHandler extends Thread {
 			return;
 		}
 		
+		System.out.println("Sending file " + fileName + " to client at " + this.address);
+		
+		// send the file without copying it through the heap when the socket has a channel
+		SocketChannel channel = socket.getChannel();
+		if(channel != null) {
+			out.flush();
+			transferFile(fileInput.getChannel(), channel);
+		} else {
+			copyStream(fileInput, out);
+		}
+		
+		fileInput.close();
+	}
+
+	/**
+	 * Method for copying a file to a stream through a heap buffer
+	 * @param fileInput, the stream to read from
+	 * @param out, the stream to write to
+	 * @throws IOException
+	 */
+	static void copyStream(InputStream fileInput, OutputStream out) throws IOException {
 		// pattern adapted from: https://stackoverflow.com/a/9526674
 		byte[] buffer = new byte[8192];	// use bytearray as buffer
 
 		int count;	
-		// read from fileInput to buffer, and then write from buffer to DataOutputStream
-		System.out.println("Sending file " + fileName + " to client at " + this.address);
+		// read from fileInput to buffer, and then write from buffer to the OutputStream
 		while((count = fileInput.read(buffer)) > 0) {
 			out.write(buffer, 0, count);
 		}
+	}
+
+	/**
+	 * Method for sending a whole file to a channel using FileChannel.transferTo, which
+	 * lets the operating system copy the file to the socket without passing the heap
+	 * @param file, the channel of the file to send
+	 * @param channel, the channel to send the file to
+	 * @throws IOException
+	 */
+	static void transferFile(FileChannel file, WritableByteChannel channel) throws IOException {
+		long position = 0;
+		long size = file.size();
 		
-		fileInput.close();
+		// transferTo may transfer fewer bytes than requested
+		while(position < size) {
+			position += file.transferTo(position, size - position, channel);
+		}
 	}
 
 	/**
@@ -170,23 +285,284 @@ public class ClientHandler extends Thread {
 	 */
 	public void saveFile(DataOutputStream out, DataInputStream in) throws IOException {
 		String fileName = in.readUTF();
-		FileOutputStream fileOutput = new FileOutputStream("./xml/" + fileName);
-		
-		// if outputstream sucessfully opened (i.e. no exception thrown), send go-ahead to server
-		out.writeUTF("OK");
-		
-		System.out.println("Saving file " + fileName + " for client at " + this.address);
+		Path temp = createTempFile(fileName);
+		try {
+			FileOutputStream fileOutput = new FileOutputStream(temp.toFile());
+			
+			// if outputstream sucessfully opened (i.e. no exception thrown), send go-ahead to server
+			out.writeUTF("OK");
+			
+			System.out.println("Saving file " + fileName + " for client at " + this.address);
+			
+			// get file from InputStream and save locally, same pattern as Client.getFileFromServer()
+			byte[] buffer = new byte[8192];
+			int count;
+			long total = 0;
 		
-		// get file from InputStream and save locally, same pattern as Client.getFileFromServer()
-		byte[] buffer = new byte[8192];
-		int count;
+			try {
+				while((count = in.read(buffer)) > 0) {
+					// the file is dropped once it is too large, the client sees the connection close
+					total += count;
+					if(total > MAX_SAVE_LENGTH) {
+						throw new IOException("File exceeds limit of " + MAX_SAVE_LENGTH + " bytes");
+					}
+					fileOutput.write(buffer, 0, count);
+				}
+			} finally {
+				fileOutput.close();
+			}
+			
+			replaceFile(temp, fileName);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
 	
-		while((count = in.read(buffer)) > 0) {
-			fileOutput.write(buffer, 0, count);
+	/**
+	 * Method for saving a file received from a client, written to a temporary file
+	 * that then replaces the file
+	 * @param fileName, the name of the file in the xml directory
+	 * @param contents, the contents of the file
+	 * @throws IOException
+	 */
+	static void writeFile(String fileName, byte[] contents) throws IOException {
+		Path temp = createTempFile(fileName);
+		try {
+			Files.write(temp, contents);
+			replaceFile(temp, fileName);
+		} finally {
+			Files.deleteIfExists(temp);
 		}
-		fileOutput.close();
 	}
 	
+	/**
+	 * Method for creating a temporary file in the xml directory, for a file being saved
+	 * @param fileName, the name of the file being saved
+	 * @return the temporary file
+	 * @throws IOException
+	 */
+	static Path createTempFile(String fileName) throws IOException {
+		Path target = Paths.get("xml", fileName).toAbsolutePath();
+		return Files.createTempFile(target.getParent(), "." + target.getFileName() + "-", ".tmp");
+	}
+	
+	/**
+	 * Method for replacing a file with a temporary file, atomically if the file
+	 * system allows it, files still being sent keep their old contents
+	 * @param temp, the temporary file holding the new contents
+	 * @param fileName, the name of the file in the xml directory
+	 * @throws IOException
+	 */
+	static void replaceFile(Path temp, String fileName) throws IOException {
+		Path target = Paths.get("xml", fileName);
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		// make sure no stale copy of the file is served, the index is updated in the background
+		FileCache.getShared().invalidate(fileName);
+		DirectoryWatcher.getShared().fileChanged(fileName);
+	}
+	
+	/**
+	 * Method for serving a persistent session, reads request frames until the client
+	 * closes the connection. Requests are executed concurrently by the request pool and
+	 * responses are written as soon as they are ready
+	 * @param out, an output stream object to the client
+	 * @param in, an input stream object from the client
+	 * @throws IOException
+	 */
+	private void serveSession(DataOutputStream out, DataInputStream in) throws IOException {
+		// agree on the highest version supported by both sides
+		int version = Math.min(in.readInt(), Frame.VERSION);
+		if(version < 1) {
+			out.writeUTF("UNSUPPORTED");
+			return;
+		}
+		out.writeUTF("OK");
+		out.writeInt(version);
+		out.flush();
+
+		System.out.println("Session (version " + version + ") started with client at " + this.address);
+
+		// save requests waiting for their contents, and the contents being received
+		SaveTransfers saves = new SaveTransfers();
+
+		Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+		try {
+			while(true) {
+				Frame frame;
+				try {
+					frame = Frame.read(in);
+				} catch(EOFException e) {
+					// client closed the session
+					if(saves.getTransferCount() > 0) {
+						System.out.println("Client at " + this.address + " disconnected during " +
+								saves.getTransferCount() + " transfer(s)");
+					}
+					break;
+				}
+
+				Frame request = frame;
+				byte[] contents = null;
+
+				// from version 2 saved files arrive as a transfer following the save request
+				if(version >= 2 && SaveTransfers.isPart(frame)) {
+					SaveTransfers.Save save;
+					try {
+						save = saves.receive(frame);
+					} catch(IOException e) {
+						// only the broken save fails, the session is still served
+						synchronized(out) {
+							Frame.ofString(frame.getRequestId(), Frame.ERROR,
+									e.getMessage() == null ? "IO ERROR" : e.getMessage()).write(out);
+						}
+						continue;
+					}
+					if(save == null) {
+						continue;
+					}
+					request = save.request;
+					contents = save.contents;
+				}
+
+				final Frame task = request;
+				final byte[] taskContents = contents;
+
+				// stop reading when too many requests are in progress
+				inFlight.acquireUninterruptibly();
+				REQUEST_POOL.execute(() -> {
+					try {
+						handleRequest(task, taskContents, version, out);
+					} catch(IOException e) {
+						System.out.println("Failed to respond to client at " +
+								this.address + " err: " + e.getMessage());
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		} finally {
+			// let requests in progress finish before the connection is closed
+			inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+		}
+	}
+
+	/**
+	 * Method for executing a single session request and writing the response
+	 * @param request, the request frame
+	 * @param contents, the received file contents of a save request in version 2, otherwise null
+	 * @param version, the protocol version of the session
+	 * @param out, an output stream object to the client
+	 * @throws IOException if the response cannot be written
+	 */
+	private void handleRequest(Frame request, byte[] contents, int version, DataOutputStream out)
+			throws IOException {
+		int id = request.getRequestId();
+		Frame response;
+
+		try {
+			switch(request.getType()) {
+				case Frame.LIST: {
+					String[] xmlFiles = getFileNames();
+					int len = xmlFiles == null ? 0 : xmlFiles.length;
+
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					DataOutputStream data = new DataOutputStream(bytes);
+					data.writeInt(len);
+					for(int i = 0; i < len; ++i) {
+						data.writeUTF(xmlFiles[i]);
+					}
+					response = new Frame(id, Frame.OK, bytes.toByteArray());
+					break;
+				}
+				case Frame.QUERY: {
+					response = new Frame(id, Frame.OK, query(request, version).encode());
+					break;
+				}
+				case Frame.LOAD: {
+					String fileName = request.payloadStream().readUTF();
+					byte[] file;
+					try {
+						file = FileCache.getShared().get(fileName);
+					} catch(NoSuchFileException e) {
+						System.out.println("File " + fileName + " requested by client at " + this.address + " not found");
+						response = Frame.ofString(id, Frame.ERROR, "NOT FOUND");
+						break;
+					}
+
+					System.out.println("Sending file " + fileName + " to client at " + this.address);
+
+					// files too large to cache are sent from disk, hot ones memory mapped and written straight
+					// to the socket channel, saves replace files so they never change while being sent
+					Path path = Paths.get("xml", fileName);
+					SocketChannel channel = socket.getChannel();
+					if(file == null && version >= 2) {
+						try(FileChannel opened = FileChannel.open(path, StandardOpenOption.READ)) {
+							if(channel != null && FileCache.getShared().isHot(fileName)) {
+								Transfer.write(out, channel, id, opened.map(FileChannel.MapMode.READ_ONLY, 0, opened.size()));
+							} else {
+								Transfer.write(out, id, opened);
+							}
+						}
+						return;
+					}
+
+					if(file == null) {
+						file = Files.readAllBytes(path);
+					}
+					if(version >= 2) {
+						Transfer.write(out, id, file);
+						return;
+					}
+					response = new Frame(id, Frame.OK, file);
+					break;
+				}
+				case Frame.SAVE: {
+					DataInputStream data = request.payloadStream();
+					String fileName = data.readUTF();
+
+					System.out.println("Saving file " + fileName + " for client at " + this.address);
+					writeFile(fileName, contents != null ? contents : data.readAllBytes());
+					response = new Frame(id, Frame.OK, null);
+					break;
+				}
+				default: {
+					System.out.println("Invalid request type: " + request.getType() + " from client at " +
+							this.address);
+					response = Frame.ofString(id, Frame.ERROR, "INVALID REQUEST");
+				}
+			}
+		} catch(IOException e) {
+			response = Frame.ofString(id, Frame.ERROR, e.getMessage() == null ? "IO ERROR" : e.getMessage());
+		} catch(RuntimeException e) {
+			// such as an invalid file name, the client is still answered so it does not wait forever
+			System.out.println("Failed request from client at " + this.address + " err: " + e);
+			response = Frame.ofString(id, Frame.ERROR, "INVALID REQUEST");
+		}
+
+		synchronized(out) {
+			response.write(out);
+		}
+	}
+
+	/**
+	 * Method for answering a query request from the drawing index
+	 * @param request, the query request frame
+	 * @param version, the protocol version of the session
+	 * @return the requested page
+	 * @throws IOException if the session does not support queries or the request cannot be decoded
+	 */
+	static DrawingPage query(Frame request, int version) throws IOException {
+		if(version < 3) {
+			throw new IOException("Query requires protocol version 3");
+		}
+		DataInputStream data = request.payloadStream();
+		return DrawingIndex.getShared().query(data.readUTF(), data.readUTF(), data.readInt(), data.readInt());
+	}
+
 	/**
 	 * Method for terminating connection to client and closing associated streams
 	 * @param out, an output stream object to the client
@@ -0,0 +1,188 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+* <h1>ConnectionExecutor</h1>
+* Class deciding how accepted client connections are executed by the server.
+* Three modes are available:
+* <ul>
+* <li>thread - a new platform thread for every connection (the original behaviour)</li>
+* <li>pool - a bounded pool of worker threads with a bounded queue of waiting connections</li>
+* <li>virtual - a virtual thread for every connection, if supported by the runtime</li>
+* </ul>
+* Bounded modes use admission control: when all permits are taken the accepting
+* thread waits (back-pressure, new connections queue up in the socket backlog) and
+* connections that cannot be admitted within the admission timeout are rejected.
+* A connection keeps its permit until it is closed, so a client holding a session
+* open holds a permit for as long as the session lasts. In pool mode this limits
+* the number of open sessions to the number of workers plus the queue size, and
+* in virtual mode to the connection limit, {@value #DEFAULT_MAX_VIRTUAL} unless
+* another is given.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class ConnectionExecutor {
+	public static final String MODE_THREAD = "thread";
+	public static final String MODE_POOL = "pool";
+	public static final String MODE_VIRTUAL = "virtual";
+
+	public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors() * 4;
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	public static final int DEFAULT_MAX_VIRTUAL = 10000;
+	public static final long DEFAULT_ADMISSION_TIMEOUT = 2000;
+
+	private final String mode;
+	private final Executor executor;
+	private final Semaphore permits;
+	private final long admissionTimeout;
+
+	/**
+	 * Constructor
+	 * @param mode, the name of the execution mode
+	 * @param executor, the executor running the client handlers
+	 * @param permits, the maximum number of admitted connections, or 0 for no limit
+	 * @param admissionTimeout, the time in milliseconds to wait for a permit
+	 */
+	private ConnectionExecutor(String mode, Executor executor, int permits, long admissionTimeout) {
+		this.mode = mode;
+		this.executor = executor;
+		this.permits = permits > 0 ? new Semaphore(permits) : null;
+		this.admissionTimeout = admissionTimeout;
+	}
+
+	/**
+	 * Method for creating an executor starting a new thread for every connection
+	 * @return the executor
+	 */
+	public static ConnectionExecutor threadPerConnection() {
+		return new ConnectionExecutor(MODE_THREAD, task -> new Thread(task).start(), 0, 0);
+	}
+
+	/**
+	 * Method for creating an executor using a bounded pool of worker threads
+	 * @param workers, the number of worker threads
+	 * @param queueSize, the number of connections allowed to wait for a worker,
+	 * at most workers + queueSize connections and sessions are open at a time
+	 * @return the executor
+	 */
+	public static ConnectionExecutor pool(int workers, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize));
+		pool.allowCoreThreadTimeOut(true);
+
+		// permits never exceed the capacity of the pool, so tasks are never rejected by it
+		return new ConnectionExecutor(MODE_POOL, pool, workers + queueSize, DEFAULT_ADMISSION_TIMEOUT);
+	}
+
+	/**
+	 * Method for creating an executor starting a virtual thread for every connection.
+	 * Virtual threads are looked up reflectively so the server still runs on runtimes
+	 * without them, in which case a thread is started per connection instead.
+	 * @param maxConnections, the maximum number of concurrent connections
+	 * @return the executor
+	 */
+	public static ConnectionExecutor virtualThreads(int maxConnections) {
+		try {
+			ExecutorService virtual = (ExecutorService)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return new ConnectionExecutor(MODE_VIRTUAL, virtual, maxConnections, DEFAULT_ADMISSION_TIMEOUT);
+		} catch(ReflectiveOperationException e) {
+			System.out.println("Virtual threads not supported by this runtime, using a thread per connection");
+			return new ConnectionExecutor(MODE_THREAD, task -> new Thread(task).start(),
+					maxConnections, DEFAULT_ADMISSION_TIMEOUT);
+		}
+	}
+
+	/**
+	 * Method for creating an executor from the name of a mode
+	 * @param mode, one of thread, pool or virtual
+	 * @param workers, the number of workers in pool mode or the connection limit in virtual mode,
+	 * 0 for the default of the mode, DEFAULT_WORKERS or DEFAULT_MAX_VIRTUAL
+	 * @return the executor
+	 * @throws IllegalArgumentException if the mode is unknown
+	 */
+	public static ConnectionExecutor create(String mode, int workers) {
+		switch(mode) {
+			case MODE_THREAD: {
+				return threadPerConnection();
+			}
+			case MODE_POOL: {
+				return pool(workers > 0 ? workers : DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE);
+			}
+			case MODE_VIRTUAL: {
+				return virtualThreads(workers > 0 ? workers : DEFAULT_MAX_VIRTUAL);
+			}
+			default: {
+				throw new IllegalArgumentException("Unknown execution mode: " + mode);
+			}
+		}
+	}
+
+	/**
+	 * Method for getting the name of the execution mode
+	 * @return the mode
+	 */
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * Method for handing an accepted connection over to a ClientHandler. Blocks while
+	 * the executor is saturated and rejects the connection if no permit becomes available
+	 * @param socket, a socket object with an established connection
+	 * @return true if the connection was admitted, false if it was rejected
+	 */
+	public boolean execute(Socket socket) {
+		if(permits != null) {
+			boolean admitted;
+			try {
+				admitted = permits.tryAcquire(admissionTimeout, TimeUnit.MILLISECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				admitted = false;
+			}
+
+			if(!admitted) {
+				reject(socket);
+				return false;
+			}
+		}
+
+		ClientHandler handler = new ClientHandler(socket);
+		executor.execute(() -> {
+			try {
+				handler.run();
+			} finally {
+				if(permits != null) {
+					permits.release();
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Method for closing a connection that could not be admitted
+	 * @param socket, the rejected connection
+	 */
+	private void reject(Socket socket) {
+		System.out.println("Server busy, rejecting client at " +
+				socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
+		try {
+			socket.close();
+		} catch(IOException e) {
+			System.err.println("Failed to close rejected connection: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+* <h1>DirectoryWatcher</h1>
+* Class for watching a directory for changed files in a background thread using
+* a WatchService. Listeners are told the name of every file that is created,
+* modified or deleted, or null when events were lost and everything may have changed.
+* Listeners are called from a single notifier thread, never from the thread reporting
+* the change, and a file changing again before its listeners have run is only
+* reported once.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class DirectoryWatcher {
+
+	/**
+	* <h2>Listener</h2>
+	* Interface for receiving changes in a watched directory
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	public interface Listener {
+		/**
+		 * Method called from the notifier thread when a file has changed
+		 * @param fileName, the name of the changed file, or null if any file may have changed
+		 */
+		void fileChanged(String fileName);
+	}
+
+	private static DirectoryWatcher shared;
+
+	private final Path directory;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	// changes waiting for the notifier, null when any file may have changed
+	private final Set<String> pending = new HashSet<String>();
+	private final ExecutorService notifier = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "directory-notifier");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Constructor, starts watching the directory
+	 * @param directory, the directory to watch
+	 */
+	public DirectoryWatcher(Path directory) {
+		this.directory = directory;
+
+		Thread thread = new Thread(this::watch, "directory-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Method for getting the watcher of the xml directory served by the server,
+	 * started on first use
+	 * @return the shared watcher
+	 */
+	public static synchronized DirectoryWatcher getShared() {
+		if(shared == null) {
+			shared = new DirectoryWatcher(Paths.get("xml"));
+		}
+		return shared;
+	}
+
+	/**
+	 * Method for adding a listener
+	 * @param listener, the listener to add
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Method for telling all listeners that a file has changed, used both for
+	 * events from the WatchService and for changes made by the server itself.
+	 * Returns at once, the listeners are called later by the notifier thread.
+	 * @param fileName, the name of the changed file, or null if any file may have changed
+	 */
+	public void fileChanged(String fileName) {
+		synchronized(pending) {
+			if(!pending.add(fileName)) {
+				// already waiting, the listeners will see the latest contents
+				return;
+			}
+		}
+		notifier.execute(() -> notifyListeners(fileName));
+	}
+
+	/**
+	 * Method run by the notifier thread for telling all listeners about a change
+	 * @param fileName, the name of the changed file, or null if any file may have changed
+	 */
+	private void notifyListeners(String fileName) {
+		synchronized(pending) {
+			// changes from now on are reported again
+			pending.remove(fileName);
+		}
+		for(Listener listener : listeners) {
+			try {
+				listener.fileChanged(fileName);
+			} catch(RuntimeException e) {
+				System.out.println("Failed to handle change of " + fileName + " err: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Method run by the watcher thread
+	 */
+	private void watch() {
+		try(WatchService service = FileSystems.getDefault().newWatchService()) {
+			directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+			while(true) {
+				WatchKey key = service.take();
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						fileChanged(null);
+					} else {
+						fileChanged(((Path)event.context()).getFileName().toString());
+					}
+				}
+
+				if(!key.reset()) {
+					System.out.println("Directory " + directory + " can no longer be watched");
+					fileChanged(null);
+					return;
+				}
+			}
+		} catch(IOException e) {
+			System.out.println("Failed to watch directory " + directory + " err: " + e.getMessage());
+		} catch(InterruptedException | ClosedWatchServiceException e) {
+			// watcher stopped
+		}
+	}
+}
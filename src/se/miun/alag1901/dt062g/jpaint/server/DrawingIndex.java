@@ -0,0 +1,370 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.miun.alag1901.dt062g.jpaint.BinaryDrawing;
+import se.miun.alag1901.dt062g.jpaint.Drawing;
+import se.miun.alag1901.dt062g.jpaint.protocol.DrawingInfo;
+import se.miun.alag1901.dt062g.jpaint.protocol.DrawingPage;
+
+/**
+* <h1>DrawingIndex</h1>
+* Class keeping an in-memory index of the drawings in a directory, so listing
+* them does not touch the file system. The directory is scanned once, after that
+* the index is updated one file at a time from DirectoryWatcher events, which
+* include files saved by the server. Only the header of every drawing is parsed,
+* plus a count of its shapes. Both XML and binary .jpb drawings are indexed.
+* A file with the same size and modification time as its entry is not parsed again.
+* <p>
+* The shared index scans the directory in the background. Until the scan is done
+* the names of the drawings are listed from the directory, and queries are
+* answered from the drawings indexed so far. The list of names only holds XML
+* drawings, which is all clients of the list command can open, binary drawings
+* are only found by queries.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.4
+* @since   2026-10-18
+*/
+public class DrawingIndex {
+	private static final XMLInputFactory XML = createFactory();
+
+	private static DrawingIndex shared;
+
+	private final Path directory;
+	// sorted by file name, so prefixes can be looked up as a range
+	private final ConcurrentSkipListMap<String, DrawingInfo> drawings = new ConcurrentSkipListMap<String, DrawingInfo>();
+	private volatile String[] fileNames;
+	// set once the directory has been scanned
+	private volatile boolean scanned = false;
+	// incremented on every change, guarded by the index, so a stale list of names is never kept
+	private long changes = 0;
+
+	/**
+	 * Constructor, the index is empty until the directory has been scanned
+	 * @param directory, the directory holding the drawings
+	 */
+	private DrawingIndex(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Method for creating the factory of the XML readers, without support for
+	 * DTDs since drawings never use them
+	 * @return the factory
+	 */
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		return factory;
+	}
+
+	/**
+	 * Method for getting the index of the xml directory served by the server,
+	 * created on first use and scanned in the background
+	 * @return the shared index
+	 */
+	public static synchronized DrawingIndex getShared() {
+		if(shared == null) {
+			// listen before scanning so no change is missed
+			DirectoryWatcher watcher = DirectoryWatcher.getShared();
+			DrawingIndex index = new DrawingIndex(Paths.get("xml"));
+			watcher.addListener(index::update);
+
+			Thread scanner = new Thread(index::rescan, "drawing-index");
+			scanner.setDaemon(true);
+			scanner.start();
+			shared = index;
+		}
+		return shared;
+	}
+
+	/**
+	 * Method for checking if a file belongs in the index
+	 * @param fileName, the name of the file
+	 * @return true for drawing files
+	 */
+	private static boolean isDrawing(String fileName) {
+		return isXml(fileName) || fileName.endsWith(BinaryDrawing.EXTENSION);
+	}
+
+	/**
+	 * Method for checking if a file is an XML drawing
+	 * @param fileName, the name of the file
+	 * @return true for XML files
+	 */
+	private static boolean isXml(String fileName) {
+		return fileName.endsWith(".xml");
+	}
+
+	/**
+	 * Method for updating the index after a file has changed
+	 * @param fileName, the name of the changed file, or null to rescan the directory
+	 */
+	public void update(String fileName) {
+		if(fileName == null) {
+			rescan();
+			return;
+		}
+		if(!isDrawing(fileName)) {
+			return;
+		}
+
+		Path path = directory.resolve(fileName);
+		BasicFileAttributes attributes = readAttributes(path);
+		if(attributes != null && isIndexed(fileName, attributes)) {
+			// already indexed, such as the event of a file saved by the server
+			return;
+		}
+
+		DrawingInfo info = attributes == null ? null : read(path, attributes);
+		if(info == null) {
+			drawings.remove(fileName);
+		} else {
+			drawings.put(fileName, info);
+		}
+		changed();
+	}
+
+	/**
+	 * Method for indexing every drawing in the directory
+	 */
+	private void rescan() {
+		Set<String> found = new HashSet<String>();
+		try(Stream<Path> files = Files.list(directory)) {
+			files.forEach(path -> {
+				String fileName = path.getFileName().toString();
+				if(isDrawing(fileName)) {
+					found.add(fileName);
+					BasicFileAttributes attributes = readAttributes(path);
+					if(attributes != null && !isIndexed(fileName, attributes)) {
+						drawings.put(fileName, read(path, attributes));
+					}
+				}
+			});
+		} catch(IOException e) {
+			System.out.println("Failed to index directory " + directory + " err: " + e.getMessage());
+		}
+
+		// files created while scanning are already indexed from their events
+		drawings.keySet().removeIf(fileName -> !found.contains(fileName) &&
+				readAttributes(directory.resolve(fileName)) == null);
+		scanned = true;
+		changed();
+	}
+
+	/**
+	 * Method for checking if a file is indexed with its current contents
+	 * @param fileName, the name of the file
+	 * @param attributes, the attributes of the file
+	 * @return true if the entry has the same size and modification time as the file
+	 */
+	private boolean isIndexed(String fileName, BasicFileAttributes attributes) {
+		DrawingInfo indexed = drawings.get(fileName);
+		return indexed != null && indexed.getSize() == attributes.size() &&
+				indexed.getLastModified() == attributes.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Method for dropping the list of names after the drawings have changed
+	 */
+	private synchronized void changed() {
+		++changes;
+		fileNames = null;
+	}
+
+	/**
+	 * Method for reading the attributes of a drawing file
+	 * @param path, the path to the file
+	 * @return the attributes, or null if the file does not exist or is not a regular file
+	 */
+	private static BasicFileAttributes readAttributes(Path path) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return attributes.isRegularFile() ? attributes : null;
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Method for reading the information about a drawing from its file
+	 * @param path, the path to the file
+	 * @param attributes, the attributes of the file
+	 * @return the information
+	 */
+	private static DrawingInfo read(Path path, BasicFileAttributes attributes) {
+		String name = "", author = "";
+		int shapes = 0;
+
+		try(InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+			if(BinaryDrawing.isBinary(in)) {
+				// the header holds everything but the size and time
+				Drawing header = new Drawing();
+				shapes = BinaryDrawing.readHeader(new DataInputStream(in), header);
+				return new DrawingInfo(path.getFileName().toString(), attributes.size(),
+						attributes.lastModifiedTime().toMillis(), shapes, header.getName(), header.getAuthor());
+			}
+
+			// only look at elements directly below <drawing>
+			XMLStreamReader reader = XML.createXMLStreamReader(in);
+			int depth = 0;
+			while(reader.hasNext()) {
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT) {
+					if(++depth == 2) {
+						switch(reader.getLocalName()) {
+							case "name": {
+								name = reader.getElementText();
+								--depth;
+								break;
+							}
+							case "author": {
+								author = reader.getElementText();
+								--depth;
+								break;
+							}
+							case "shape": {
+								++shapes;
+								break;
+							}
+						}
+					}
+				} else if(event == XMLStreamConstants.END_ELEMENT) {
+					--depth;
+				}
+			}
+			reader.close();
+		} catch(IOException | XMLStreamException e) {
+			// keep what could be read, the file may be in the middle of being written
+		}
+
+		return new DrawingInfo(path.getFileName().toString(), attributes.size(),
+				attributes.lastModifiedTime().toMillis(), shapes, name, author);
+	}
+
+	/**
+	 * Method for getting the names of all XML drawings, listed from the directory
+	 * until it has been scanned
+	 * @return the file names in alphabetical order, or null if the directory cannot be read
+	 */
+	public String[] getFileNames() {
+		if(!scanned) {
+			return listXmlFiles();
+		}
+
+		String[] names = fileNames;
+		if(names == null) {
+			long seen;
+			synchronized(this) {
+				seen = changes;
+			}
+			names = drawings.keySet().stream().filter(DrawingIndex::isXml).toArray(String[]::new);
+			synchronized(this) {
+				// only keep the names if nothing changed while they were listed
+				if(changes == seen) {
+					fileNames = names;
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Method for listing the XML drawings straight from the directory
+	 * @return the file names in alphabetical order, or null if the directory cannot be read
+	 */
+	private String[] listXmlFiles() {
+		try(Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString()).filter(DrawingIndex::isXml)
+					.sorted().toArray(String[]::new);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Method for getting a page of the drawings whose file names start with a prefix
+	 * @param prefix, the prefix, empty for all drawings
+	 * @param sort, one of the sort orders of DrawingPage
+	 * @param offset, the number of matching drawings to skip
+	 * @param limit, the maximum number of drawings to return
+	 * @return the page
+	 */
+	public DrawingPage query(String prefix, String sort, int offset, int limit) {
+		Collection<DrawingInfo> matching = prefix.isEmpty() ? drawings.values()
+				: drawings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+		offset = Math.max(0, offset);
+		limit = Math.max(0, limit);
+
+		List<DrawingInfo> page = new ArrayList<DrawingInfo>(Math.min(limit, 1024));
+		int total;
+
+		if(sort.equals(DrawingPage.SORT_NAME)) {
+			// already in name order, only walk up to the end of the page
+			total = 0;
+			for(DrawingInfo info : matching) {
+				if(total >= offset && page.size() < limit) {
+					page.add(info);
+				}
+				++total;
+			}
+		} else {
+			List<DrawingInfo> sorted = new ArrayList<DrawingInfo>(matching);
+			sorted.sort(comparator(sort));
+			total = sorted.size();
+			if(offset < total) {
+				page.addAll(sorted.subList(offset, (int)Math.min(total, (long)offset + limit)));
+			}
+		}
+
+		return new DrawingPage(total, page);
+	}
+
+	/**
+	 * Method for getting the comparator of a sort order
+	 * @param sort, one of the sort orders of DrawingPage
+	 * @return the comparator, largest or newest first
+	 */
+	private static Comparator<DrawingInfo> comparator(String sort) {
+		switch(sort) {
+			case DrawingPage.SORT_MODIFIED: {
+				return Comparator.comparingLong(DrawingInfo::getLastModified).reversed();
+			}
+			case DrawingPage.SORT_SIZE: {
+				return Comparator.comparingLong(DrawingInfo::getSize).reversed();
+			}
+			case DrawingPage.SORT_SHAPES: {
+				return Comparator.comparingInt(DrawingInfo::getShapeCount).reversed();
+			}
+			default: {
+				return Comparator.comparing(DrawingInfo::getFileName);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DrawingIndex[drawings=" + drawings.size() + "]";
+	}
+}
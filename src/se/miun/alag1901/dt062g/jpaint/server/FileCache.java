@@ -0,0 +1,215 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* <h1>FileCache</h1>
+* Class for keeping the contents of recently requested files in memory. The cache
+* holds at most a fixed number of bytes and evicts the least recently used files
+* first. Files larger than an eighth of the budget are never cached. Entries are
+* invalidated when the server saves a file and when a DirectoryWatcher reports a
+* change, so files edited on disk are picked up as well.
+* The budget can be set in bytes with the system property jpaint.cache.bytes.
+* <p>
+* Files too large to cache are counted as they are requested, a file requested
+* {@link #HOT_REQUESTS} times since it last changed is hot, which handlers may use
+* to decide to memory map it. The threshold is set with jpaint.map.hot.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.1
+* @since   2026-10-18
+*/
+public class FileCache {
+	public static final long DEFAULT_BUDGET = 64 * 1024 * 1024;
+	public static final int HOT_REQUESTS = Integer.getInteger("jpaint.map.hot", 3);
+
+	private static FileCache shared;
+
+	private final Path directory;
+	private final long budget;
+	private final long maxEntrySize;
+
+	// access ordered, so iteration starts with the least recently used file
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	private long size = 0;
+	// the number of requests of files too large to cache, since they last changed
+	private final Map<String, Integer> largeRequests = new HashMap<String, Integer>();
+	// incremented on every invalidation, so reads racing with a change are not cached
+	private long generation = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param directory, the directory holding the files
+	 * @param budget, the maximum number of bytes to keep in memory
+	 */
+	public FileCache(Path directory, long budget) {
+		this.directory = directory;
+		this.budget = budget;
+		this.maxEntrySize = budget / 8;
+	}
+
+	/**
+	 * Method for getting the cache shared by all connections of the server, created
+	 * on first use together with a watcher of the xml directory
+	 * @return the shared cache
+	 */
+	public static synchronized FileCache getShared() {
+		if(shared == null) {
+			shared = new FileCache(Paths.get("xml"), Long.getLong("jpaint.cache.bytes", DEFAULT_BUDGET));
+			DirectoryWatcher.getShared().addListener(shared::invalidate);
+		}
+		return shared;
+	}
+
+	/**
+	 * Method for getting the contents of a file, from memory if possible
+	 * @param fileName, the name of the file
+	 * @return the contents, or null if the file is too large to be cached
+	 * @throws NoSuchFileException if the file does not exist
+	 * @throws IOException if the file cannot be read
+	 */
+	public byte[] get(String fileName) throws IOException {
+		long readGeneration;
+		synchronized(this) {
+			byte[] contents = entries.get(fileName);
+			if(contents != null) {
+				hits.incrementAndGet();
+				return contents;
+			}
+			readGeneration = generation;
+		}
+		misses.incrementAndGet();
+
+		// the type and size are read together, files are replaced rather than changed by the server
+		Path path = directory.resolve(fileName);
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if(!attributes.isRegularFile()) {
+			throw new NoSuchFileException(fileName);
+		}
+		if(attributes.size() > maxEntrySize) {
+			countLarge(fileName, readGeneration);
+			return null;
+		}
+
+		// read outside the lock so other files can be served meanwhile
+		byte[] contents = Files.readAllBytes(path);
+		if(contents.length > maxEntrySize) {
+			countLarge(fileName, readGeneration);
+			return null;
+		}
+
+		synchronized(this) {
+			if(generation == readGeneration && !entries.containsKey(fileName)) {
+				entries.put(fileName, contents);
+				size += contents.length;
+				evict();
+			}
+		}
+		return contents;
+	}
+
+	/**
+	 * Method for counting a request of a file too large to cache
+	 * @param fileName, the name of the file
+	 * @param readGeneration, the generation when the file was looked up
+	 */
+	private synchronized void countLarge(String fileName, long readGeneration) {
+		if(generation == readGeneration) {
+			largeRequests.merge(fileName, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Method for checking if a file too large to cache is requested often
+	 * @param fileName, the name of the file
+	 * @return true if it has been requested at least HOT_REQUESTS times since it last changed
+	 */
+	public synchronized boolean isHot(String fileName) {
+		return largeRequests.getOrDefault(fileName, 0) >= HOT_REQUESTS;
+	}
+
+	/**
+	 * Method for removing files from the cache
+	 * @param fileName, the name of the changed file, or null to remove all files
+	 */
+	public synchronized void invalidate(String fileName) {
+		++generation;
+		if(fileName == null) {
+			entries.clear();
+			largeRequests.clear();
+			size = 0;
+			return;
+		}
+		largeRequests.remove(fileName);
+
+		byte[] removed = entries.remove(fileName);
+		if(removed != null) {
+			size -= removed.length;
+		}
+	}
+
+	/**
+	 * Method for evicting the least recently used files until the cache is within budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+		while(size > budget && eldest.hasNext()) {
+			size -= eldest.next().getValue().length;
+			eldest.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Method for getting the number of requests served from memory
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Method for getting the number of requests that had to read the file
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Method for getting the number of files evicted to stay within budget
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Method for getting the number of bytes currently cached
+	 * @return the size of the cache
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "FileCache[files=" + entries.size() + "; bytes=" + size + "/" + budget
+			   + "; hits=" + hits.get() + "; misses=" + misses.get()
+			   + "; evictions=" + evictions.get() + "]";
+	}
+}
@@ -0,0 +1,945 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+import se.miun.alag1901.dt062g.jpaint.protocol.Transfer;
+
+/**
+* <h1>NioConnection</h1>
+* Class holding the state of a single connection served by a NioServer event loop.
+* Incoming bytes are parsed as they arrive, and responses are queued and written
+* whenever the channel accepts more data. File bodies are streamed through a direct
+* ByteBuffer so that they are never read into the heap as a whole. The direct input
+* buffer holds a whole CHUNK frame, larger frames are assembled in a heap buffer
+* that is dropped once the frame has been handled.
+* <p>
+* Everything touching the disk is run by a shared pool of disk workers, and its
+* result is handed back to the event loop, so a slow disk never stalls the other
+* connections of the loop. The connection stops reading while too many requests
+* are in progress or too many responses wait to be sent.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.6
+* @since   2026-10-18
+*/
+class NioConnection {
+	private static final int BUFFER_SIZE = Transfer.CHUNK_SIZE;
+	// room for a frame header followed by a full chunk
+	private static final int INPUT_SIZE = 9 + Transfer.CHUNK_SIZE;
+	// maximum number of tasks in progress on the disk workers, and of responses waiting to be sent
+	private static final int MAX_IN_FLIGHT = 32;
+	private static final int MAX_QUEUED = 32;
+
+	// shared workers doing the file work of all event loops
+	private static final ExecutorService DISK_POOL = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors() * 2, task -> {
+				Thread thread = new Thread(task, "nio-disk-worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	// states of the connection
+	private static final int COMMAND = 0;
+	private static final int FILE_NAME = 1;
+	private static final int SAVING = 2;
+	private static final int VERSION = 3;
+	private static final int FRAMES = 4;
+	private static final int CLOSING = 5;
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final Executor loop;
+	private final Runnable onClose;
+	private final String address;
+
+	private int state = COMMAND;
+	private String command;
+	private String fileName;
+	private int version;
+	private FileChannel saveFile;
+	// the temporary file a legacy save is written to, which replaces the file when done
+	private Path saveTemp;
+	private long saved = 0;
+
+	// the input being parsed, either the direct input buffer or a heap buffer holding a large frame
+	private final ByteBuffer input = ByteBuffer.allocateDirect(INPUT_SIZE);
+	private ByteBuffer in = input;
+	private final ByteBuffer fileBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final Deque<Output> out = new ArrayDeque<Output>();
+	// number of tasks running on the disk workers, and whether reading has stopped because of them
+	private int inFlight = 0;
+	private boolean paused = false;
+
+	// save requests of a session waiting for their contents, and the contents being received
+	private final SaveTransfers saves = new SaveTransfers();
+
+	/**
+	 * Constructor
+	 * @param channel, a non-blocking channel with an established connection
+	 * @param key, the key of the channel in the selector of its event loop
+	 * @param loop, runs tasks on the event loop thread
+	 * @param onClose, run once when the connection is closed
+	 */
+	NioConnection(SocketChannel channel, SelectionKey key, Executor loop, Runnable onClose) {
+		this.channel = channel;
+		this.key = key;
+		this.loop = loop;
+		this.onClose = onClose;
+		this.address = channel.socket().getInetAddress().getHostAddress() + ":" + channel.socket().getPort();
+
+		System.out.println("New client connected from: " + this.address);
+	}
+
+	/**
+	 * Method called by the event loop when the channel has data to read
+	 * @throws IOException
+	 */
+	void onReadable() throws IOException {
+		int count;
+		if(in == input) {
+			count = channel.read(in);
+		} else {
+			// a large frame is read through the direct buffer, never more than it still needs
+			input.clear().limit(Math.min(input.capacity(), in.remaining()));
+			count = channel.read(input);
+			input.flip();
+			in.put(input);
+		}
+		if(count < 0) {
+			onEndOfStream();
+			return;
+		}
+
+		in.flip();
+		process();
+		compact();
+		updateReading();
+	}
+
+	/**
+	 * Method called by the event loop when the channel can accept more data
+	 * @throws IOException
+	 */
+	void onWritable() throws IOException {
+		flush();
+		updateReading();
+	}
+
+	/**
+	 * Method for closing the connection after a failure
+	 * @param e, the failure
+	 */
+	void fail(Exception e) {
+		System.out.println("Connection to client at " + this.address + " failed, err: " +
+				(e.getMessage() == null ? e.toString() : e.getMessage()));
+		close();
+	}
+
+	/**
+	 * Method for closing the connection and any file in progress
+	 */
+	void close() {
+		if(!channel.isOpen()) {
+			return;
+		}
+		System.out.println("Client from " + this.address + " has disconnected");
+		try {
+			channel.close();
+		} catch(IOException e) {
+			System.err.println("Failed to close connection from client at " +
+					this.address + " err: " + e.getMessage());
+		}
+		release();
+		onClose.run();
+	}
+
+	/**
+	 * Method for releasing the files of a closed connection, also called when a
+	 * task finishing after the connection closed has opened a file
+	 */
+	private void release() {
+		try {
+			for(Output output : out) {
+				output.close();
+			}
+		} catch(IOException e) {
+			System.err.println("Failed to close file for client at " + this.address + " err: " + e.getMessage());
+		}
+		out.clear();
+
+		if(saveFile != null || saveTemp != null) {
+			FileChannel file = saveFile;
+			Path temp = saveTemp;
+			saveFile = null;
+			saveTemp = null;
+			DISK_POOL.execute(() -> {
+				try {
+					if(file != null) {
+						file.close();
+					}
+					if(temp != null) {
+						Files.deleteIfExists(temp);
+					}
+				} catch(IOException e) {
+					System.err.println("Failed to remove unfinished save " + temp + " err: " + e.getMessage());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Method for writing queued responses for as long as the channel accepts them,
+	 * closes the connection when it is closing and nothing is left to do
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		while(!out.isEmpty()) {
+			Output output = out.peek();
+			if(!output.writeTo(channel)) {
+				if(output.isWaiting()) {
+					// waiting for the disk, a task wakes the connection up when done
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				} else {
+					// socket buffer full, wait for the next writable event
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+				return;
+			}
+			out.poll();
+		}
+
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		if(state == CLOSING && inFlight == 0) {
+			close();
+		}
+	}
+
+	/**
+	 * Method for checking whether the connection has to wait before it handles more input
+	 * @return true if too much work is in progress
+	 */
+	private boolean isBusy() {
+		if(state != FRAMES) {
+			// files and legacy commands are handled one step at a time
+			return inFlight > 0;
+		}
+		return inFlight >= MAX_IN_FLIGHT || out.size() >= MAX_QUEUED;
+	}
+
+	/**
+	 * Method for reading again once the connection is no longer busy, and handling
+	 * the input received before reading stopped
+	 * @throws IOException
+	 */
+	private void updateReading() throws IOException {
+		if(state == CLOSING || !key.isValid()) {
+			return;
+		}
+
+		if(paused && !isBusy()) {
+			in.flip();
+			process();
+			compact();
+		}
+		paused = isBusy();
+		if(state != CLOSING && key.isValid()) {
+			key.interestOps(paused ? key.interestOps() & ~SelectionKey.OP_READ : key.interestOps() | SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Method for running file work on a disk worker, its result is handed back to
+	 * the event loop when done
+	 * @param task, the work to run
+	 */
+	private void submit(Task task) {
+		++inFlight;
+		DISK_POOL.execute(() -> {
+			try {
+				Result result = task.run();
+				loop.execute(() -> onTaskDone(result, null));
+			} catch(IOException | RuntimeException e) {
+				loop.execute(() -> onTaskDone(null, e));
+			}
+		});
+	}
+
+	/**
+	 * Method called on the event loop when a task is done
+	 * @param result, the result of the task, or null if it has none
+	 * @param failure, the exception thrown by the task, or null if it succeeded
+	 */
+	private void onTaskDone(Result result, Exception failure) {
+		--inFlight;
+		try {
+			if(result != null) {
+				result.apply();
+			}
+			if(!channel.isOpen()) {
+				// closed while the task was running
+				release();
+				return;
+			}
+			if(failure != null) {
+				fail(failure);
+				return;
+			}
+			flush();
+			updateReading();
+		} catch(IOException | RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Method for handling the client closing its side of the connection
+	 * @throws IOException
+	 */
+	private void onEndOfStream() throws IOException {
+		if(state == SAVING) {
+			// a legacy save ends when the client closes the connection
+			FileChannel file = saveFile;
+			Path temp = saveTemp;
+			String name = fileName;
+			saveFile = null;
+			saveTemp = null;
+			submit(() -> {
+				try {
+					file.close();
+					ClientHandler.replaceFile(temp, name);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+				return null;
+			});
+		} else if(state == FRAMES && saves.getTransferCount() > 0) {
+			System.out.println("Client at " + this.address + " disconnected during " +
+					saves.getTransferCount() + " transfer(s)");
+		}
+
+		// finish sending queued responses before closing
+		state = CLOSING;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		flush();
+	}
+
+	/**
+	 * Method for parsing as much of the received data as possible
+	 * @throws IOException
+	 */
+	private void process() throws IOException {
+		boolean progress = true;
+		while(progress && in.hasRemaining() && !isBusy()) {
+			switch(state) {
+				case COMMAND: {
+					String received = readString();
+					progress = received != null;
+					if(progress) {
+						onCommand(received);
+					}
+					break;
+				}
+				case FILE_NAME: {
+					String fileName = readString();
+					progress = fileName != null;
+					if(progress) {
+						onFileName(fileName);
+					}
+					break;
+				}
+				case SAVING: {
+					// the unfinished file is removed when the connection fails
+					saved += in.remaining();
+					if(saved > ClientHandler.MAX_SAVE_LENGTH) {
+						throw new IOException("File exceeds limit of " + ClientHandler.MAX_SAVE_LENGTH + " bytes");
+					}
+					// reading waits until the received bytes are written
+					byte[] bytes = new byte[in.remaining()];
+					in.get(bytes);
+					FileChannel file = saveFile;
+					submit(() -> {
+						ByteBuffer buffer = ByteBuffer.wrap(bytes);
+						while(buffer.hasRemaining()) {
+							file.write(buffer);
+						}
+						return null;
+					});
+					break;
+				}
+				case VERSION: {
+					progress = in.remaining() >= 4;
+					if(progress) {
+						onVersion(in.getInt());
+					}
+					break;
+				}
+				case FRAMES: {
+					Frame frame = readFrame();
+					progress = frame != null;
+					if(progress) {
+						onFrame(frame);
+					}
+					break;
+				}
+				default: {
+					// ignore anything sent while closing
+					in.position(in.limit());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method for reading a string written with DataOutputStream.writeUTF
+	 * @return the string, or null if it has not been fully received yet
+	 * @throws IOException
+	 */
+	private String readString() throws IOException {
+		if(in.remaining() < 2) {
+			return null;
+		}
+		int length = 2 + (in.getShort(in.position()) & 0xffff);
+		if(in.remaining() < length) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+	/**
+	 * Method for keeping the input not yet parsed for the next read, returns to the
+	 * direct input buffer once a large frame has been handled
+	 */
+	private void compact() {
+		in.compact();
+		// the input starts with the next frame, kept in the heap buffer while it does not fit
+		if(in != input && in.position() <= input.capacity() &&
+				(in.position() < 9 || 9 + in.getInt(5) <= input.capacity())) {
+			in.flip();
+			input.clear();
+			input.put(in);
+			in = input;
+		}
+	}
+
+	/**
+	 * Method for reading a session frame, moves the input to a heap buffer for frames
+	 * larger than the direct input buffer
+	 * @return the frame, or null if it has not been fully received yet
+	 * @throws IOException
+	 */
+	private Frame readFrame() throws IOException {
+		if(in.remaining() < 9) {
+			return null;
+		}
+		int start = in.position();
+		int length = in.getInt(start + 5);
+		if(length < 0 || length > Frame.MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid frame length: " + length);
+		}
+
+		if(in.remaining() < 9 + length) {
+			if(in.capacity() < 9 + length) {
+				// the buffer is compacted after processing, so only the frame has to fit
+				ByteBuffer larger = ByteBuffer.allocate(9 + length);
+				larger.put(in);
+				larger.flip();
+				in = larger;
+			}
+			return null;
+		}
+
+		int requestId = in.getInt();
+		byte type = in.get();
+		in.getInt();
+		byte[] payload = new byte[length];
+		in.get(payload);
+		return new Frame(requestId, type, payload);
+	}
+
+	/**
+	 * Method for handling the first command sent by the client
+	 * @param received, the command
+	 */
+	private void onCommand(String received) throws IOException {
+		System.out.println("Command '" + received + "' recieved from client at " + this.address);
+		command = received;
+
+		switch(command) {
+			case "list": {
+				System.out.println("Sedning list of files to client at " + this.address);
+				state = CLOSING;
+				submit(() -> {
+					byte[] list = listing();
+					return () -> send(ByteBuffer.wrap(list));
+				});
+				break;
+			}
+			case "stats": {
+				send(ByteBuffer.wrap(Frame.encodeString(FileCache.getShared().toString())));
+				state = CLOSING;
+				flush();
+				break;
+			}
+			case "load":
+			case "save": {
+				state = FILE_NAME;
+				break;
+			}
+			case Frame.SESSION_COMMAND: {
+				state = VERSION;
+				break;
+			}
+			default: {
+				System.out.println("Invalid command: " + command + " from client at " +
+						this.address);
+				state = CLOSING;
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Method for handling the file name of a legacy load or save command
+	 * @param fileName, the name of the file
+	 * @throws IOException
+	 */
+	private void onFileName(String fileName) {
+		this.fileName = fileName;
+		Path path = Paths.get("xml", fileName);
+
+		if(command.equals("load")) {
+			state = CLOSING;
+			submit(() -> {
+				byte[] cached;
+				FileChannel file = null;
+				try {
+					cached = FileCache.getShared().get(fileName);
+					if(cached == null) {
+						// stream files too large to cache from disk, unless removed since
+						file = FileChannel.open(path, StandardOpenOption.READ);
+					}
+				} catch(NoSuchFileException e) {
+					System.out.println("File " + fileName + " requested by client at " + this.address + " not found");
+					return () -> send(ByteBuffer.wrap(Frame.encodeString("NOT FOUND")));
+				}
+
+				System.out.println("Sending file " + fileName + " to client at " + this.address);
+				ByteBuffer ok = ByteBuffer.wrap(Frame.encodeString("OK"));
+				if(cached != null) {
+					return () -> out.add(new BufferOutput(ok, ByteBuffer.wrap(cached)));
+				}
+				FileChannel opened = file;
+				return () -> {
+					send(ok);
+					out.add(new FileOutput(opened, -1));
+				};
+			});
+		} else {
+			state = SAVING;
+			submit(() -> {
+				// files being sent are never changed in place
+				Path temp = ClientHandler.createTempFile(fileName);
+				FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE);
+				System.out.println("Saving file " + fileName + " for client at " + this.address);
+				return () -> {
+					saveTemp = temp;
+					saveFile = file;
+					send(ByteBuffer.wrap(Frame.encodeString("OK")));
+				};
+			});
+		}
+	}
+
+	/**
+	 * Method for answering the session handshake
+	 * @param requested, the version requested by the client
+	 * @throws IOException
+	 */
+	private void onVersion(int requested) throws IOException {
+		// agree on the highest version supported by both sides
+		version = Math.min(requested, Frame.VERSION);
+		if(version < 1) {
+			send(ByteBuffer.wrap(Frame.encodeString("UNSUPPORTED")));
+			state = CLOSING;
+		} else {
+			ByteBuffer answer = ByteBuffer.allocate(8);
+			answer.put(Frame.encodeString("OK")).putInt(version).flip();
+			send(answer);
+			state = FRAMES;
+			System.out.println("Session (version " + version + ") started with client at " + this.address);
+		}
+		flush();
+	}
+
+	/**
+	 * Method for handling a frame received in a session
+	 * @param frame, the frame
+	 * @throws IOException
+	 */
+	private void onFrame(Frame frame) throws IOException {
+		Frame request = frame;
+		byte[] contents = null;
+
+		// from version 2 saved files arrive as a transfer following the save request
+		if(version >= 2 && SaveTransfers.isPart(frame)) {
+			SaveTransfers.Save save;
+			try {
+				save = saves.receive(frame);
+			} catch(IOException e) {
+				// only the broken save fails, the session is still served
+				sendFrame(Frame.ofString(frame.getRequestId(), Frame.ERROR,
+						e.getMessage() == null ? "IO ERROR" : e.getMessage()));
+				flush();
+				return;
+			}
+			if(save == null) {
+				return;
+			}
+			request = save.request;
+			contents = save.contents;
+		}
+
+		Frame task = request;
+		byte[] taskContents = contents;
+		submit(() -> {
+			Output response = handleRequest(task, taskContents);
+			return () -> out.add(response);
+		});
+	}
+
+	/**
+	 * Method for executing a single session request, run by a disk worker
+	 * @param request, the request frame
+	 * @param contents, the received file contents of a save request in version 2, otherwise null
+	 * @return the response to queue
+	 */
+	private Output handleRequest(Frame request, byte[] contents) {
+		int id = request.getRequestId();
+
+		try {
+			switch(request.getType()) {
+				case Frame.LIST: {
+					return frameOutput(new Frame(id, Frame.OK, listing()));
+				}
+				case Frame.QUERY: {
+					return frameOutput(new Frame(id, Frame.OK, ClientHandler.query(request, version).encode()));
+				}
+				case Frame.LOAD: {
+					String fileName = request.payloadStream().readUTF();
+					byte[] cached;
+					try {
+						cached = FileCache.getShared().get(fileName);
+					} catch(NoSuchFileException e) {
+						System.out.println("File " + fileName + " requested by client at " + this.address + " not found");
+						return frameOutput(Frame.ofString(id, Frame.ERROR, "NOT FOUND"));
+					}
+
+					System.out.println("Sending file " + fileName + " to client at " + this.address);
+					Path path = Paths.get("xml", fileName);
+					if(version < 2) {
+						return frameOutput(new Frame(id, Frame.OK, cached != null ? cached : Files.readAllBytes(path)));
+					} else if(cached != null) {
+						// encode the transfer frames of a cached file in one buffer
+						ByteArrayOutputStream frames = new ByteArrayOutputStream(cached.length + 64);
+						Transfer.write(new DataOutputStream(frames), id, cached);
+						return new BufferOutput(ByteBuffer.wrap(frames.toByteArray()));
+					}
+					return new FileOutput(FileChannel.open(path, StandardOpenOption.READ), id);
+				}
+				case Frame.SAVE: {
+					DataInputStream data = request.payloadStream();
+					String fileName = data.readUTF();
+
+					System.out.println("Saving file " + fileName + " for client at " + this.address);
+					ClientHandler.writeFile(fileName, contents != null ? contents : data.readAllBytes());
+					return frameOutput(new Frame(id, Frame.OK, null));
+				}
+				default: {
+					System.out.println("Invalid request type: " + request.getType() + " from client at " +
+							this.address);
+					return frameOutput(Frame.ofString(id, Frame.ERROR, "INVALID REQUEST"));
+				}
+			}
+		} catch(IOException e) {
+			return frameOutput(Frame.ofString(id, Frame.ERROR, e.getMessage() == null ? "IO ERROR" : e.getMessage()));
+		} catch(RuntimeException e) {
+			// a malformed request fails only itself
+			System.out.println("Invalid request from client at " + this.address + " err: " + e);
+			return frameOutput(Frame.ofString(id, Frame.ERROR, "INVALID REQUEST"));
+		}
+	}
+
+	/**
+	 * Method for encoding the list of available files the same way as ClientHandler
+	 * @return the encoded list
+	 * @throws IOException
+	 */
+	private static byte[] listing() throws IOException {
+		String[] xmlFiles = ClientHandler.getFileNames();
+		int len = xmlFiles == null ? 0 : xmlFiles.length;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(len);
+		for(int i = 0; i < len; ++i) {
+			data.writeUTF(xmlFiles[i]);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method for queueing bytes to send
+	 * @param buffer, the bytes to send
+	 */
+	private void send(ByteBuffer buffer) {
+		out.add(new BufferOutput(buffer));
+	}
+
+	/**
+	 * Method for queueing a frame to send
+	 * @param frame, the frame to send
+	 */
+	private void sendFrame(Frame frame) {
+		out.add(frameOutput(frame));
+	}
+
+	/**
+	 * Method for encoding a frame to send
+	 * @param frame, the frame
+	 * @return the encoded frame
+	 */
+	private static Output frameOutput(Frame frame) {
+		ByteBuffer buffer = ByteBuffer.allocate(9 + frame.getPayload().length);
+		putHeader(buffer, frame.getRequestId(), frame.getType(), frame.getPayload().length);
+		buffer.put(frame.getPayload()).flip();
+		return new BufferOutput(buffer);
+	}
+
+	/**
+	 * Method for putting a frame header in a buffer
+	 * @param buffer, the buffer
+	 * @param requestId, the id of the request the frame belongs to
+	 * @param type, the type of the frame
+	 * @param length, the length of the payload
+	 */
+	private static void putHeader(ByteBuffer buffer, int requestId, byte type, int length) {
+		buffer.putInt(requestId).put(type).putInt(length);
+	}
+
+	/**
+	* <h2>Output</h2>
+	* Something queued to be written to the channel
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.1
+	* @since   2026-10-18
+	*/
+	private interface Output {
+		/**
+		 * Method for writing as much as the channel accepts
+		 * @param channel, the channel to write to
+		 * @return true when everything has been written
+		 * @throws IOException
+		 */
+		boolean writeTo(SocketChannel channel) throws IOException;
+
+		/**
+		 * Method for checking whether the output waits for a disk worker instead of the channel
+		 * @return true while waiting for the disk
+		 */
+		default boolean isWaiting() {
+			return false;
+		}
+
+		/**
+		 * Method for releasing resources if the connection closes early
+		 * @throws IOException
+		 */
+		default void close() throws IOException { }
+	}
+
+	/**
+	* <h2>Task</h2>
+	* File work run by a disk worker
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	private interface Task {
+		/**
+		 * Method for doing the work
+		 * @return what to do with the result on the event loop, or null if nothing
+		 * @throws IOException
+		 */
+		Result run() throws IOException;
+	}
+
+	/**
+	* <h2>Result</h2>
+	* The result of a Task, applied on the event loop
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	private interface Result {
+		/**
+		 * Method for applying the result to the connection
+		 */
+		void apply();
+	}
+
+	/**
+	* <h2>BufferOutput</h2>
+	* Bytes in one or more buffers queued to be written
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.1
+	* @since   2026-10-18
+	*/
+	private static class BufferOutput implements Output {
+		private final ByteBuffer[] buffers;
+
+		BufferOutput(ByteBuffer... buffers) {
+			this.buffers = buffers;
+		}
+
+		@Override
+		public boolean writeTo(SocketChannel channel) throws IOException {
+			channel.write(buffers);
+			return !buffers[buffers.length - 1].hasRemaining();
+		}
+	}
+
+	/**
+	* <h2>FileOutput</h2>
+	* A file streamed to the channel through the direct file buffer of the connection,
+	* either raw for the legacy load command or as a transfer in a session. Every
+	* chunk is read by a disk worker, and written once the read is done.
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.1
+	* @since   2026-10-18
+	*/
+	private class FileOutput implements Output {
+		// the number of bytes read before the next chunk has been read
+		private static final int NOT_READ = -2;
+
+		private final FileChannel file;
+		private final int requestId;
+		private final CRC32 checksum = new CRC32();
+		// room for the BEGIN frame and the header of the first chunk
+		private final ByteBuffer header = ByteBuffer.allocate(32);
+		private boolean started = false;
+		private boolean finished = false;
+		private boolean reading = false;
+		private int count = NOT_READ;
+
+		/**
+		 * Constructor
+		 * @param file, the file to send
+		 * @param requestId, the request to send it as a transfer for, or -1 to send it raw
+		 */
+		FileOutput(FileChannel file, int requestId) {
+			this.file = file;
+			this.requestId = requestId;
+		}
+
+		@Override
+		public boolean writeTo(SocketChannel channel) throws IOException {
+			// the file buffer is shared, but outputs are written one at a time
+			if(!started && !reading && count == NOT_READ) {
+				header.limit(0);
+				fileBuffer.clear().limit(0);
+			}
+
+			while(true) {
+				if(reading) {
+					// the file buffer belongs to the worker until the read is done
+					return false;
+				}
+				if(count == NOT_READ) {
+					// write what is pending from the previous chunk first
+					if(header.hasRemaining() || fileBuffer.hasRemaining()) {
+						channel.write(new ByteBuffer[] { header, fileBuffer });
+						if(header.hasRemaining() || fileBuffer.hasRemaining()) {
+							return false;
+						}
+					}
+					if(finished) {
+						file.close();
+						return true;
+					}
+
+					// the worker hands the next chunk back and the loop frames and writes it
+					reading = true;
+					fileBuffer.clear();
+					submit(() -> {
+						int read = file.read(fileBuffer);
+						return () -> {
+							count = read;
+							reading = false;
+						};
+					});
+					return false;
+				}
+
+				header.clear();
+				if(!started) {
+					if(requestId >= 0) {
+						putHeader(header, requestId, Frame.BEGIN, 8);
+						header.putLong(file.size());
+					}
+					started = true;
+				}
+
+				if(count < 0) {
+					fileBuffer.limit(0);
+					if(requestId >= 0) {
+						putHeader(header, requestId, Frame.END, 8);
+						header.putLong(checksum.getValue());
+					}
+					finished = true;
+				} else {
+					fileBuffer.flip();
+					if(requestId >= 0) {
+						checksum.update(fileBuffer.duplicate());
+						putHeader(header, requestId, Frame.CHUNK, fileBuffer.remaining());
+					}
+				}
+				count = NOT_READ;
+				header.flip();
+			}
+		}
+
+		@Override
+		public boolean isWaiting() {
+			return reading;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+* <h1>NioServer</h1>
+* Server engine using non-blocking channels instead of a thread per connection.
+* The listening thread accepts connections and hands them out in turn to a small
+* number of event loops, each serving all of its connections with a single
+* Selector. Speaks the same legacy commands and session protocol as ClientHandler.
+* File work is done by disk workers, see NioConnection, and a failing connection
+* is closed without affecting the others of its event loop.
+* <p>
+* At most {@link #MAX_CONNECTIONS} connections are open at once, set with the system
+* property jpaint.nio.connections. When all are taken the listening thread waits
+* for one to close, and rejects the new connection if none closes within the same
+* admission timeout as a ConnectionExecutor.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.2
+* @since   2026-10-18
+*/
+public class NioServer {
+	public static final int DEFAULT_EVENT_LOOPS = Runtime.getRuntime().availableProcessors();
+	public static final int MAX_CONNECTIONS = Integer.getInteger("jpaint.nio.connections",
+			ConnectionExecutor.DEFAULT_MAX_VIRTUAL);
+
+	private final int port;
+	private final EventLoop[] loops;
+	// a permit is held by every open connection
+	private final Semaphore connections = new Semaphore(MAX_CONNECTIONS);
+
+	/**
+	 * Constructor
+	 * @param port, the port to listen on
+	 * @param nrOfLoops, the number of event loop threads
+	 * @throws IOException if a selector cannot be opened
+	 */
+	public NioServer(int port, int nrOfLoops) throws IOException {
+		this.port = port;
+		this.loops = new EventLoop[Math.max(1, nrOfLoops)];
+
+		for(int i = 0; i < loops.length; ++i) {
+			loops[i] = new EventLoop(connections::release);
+			Thread thread = new Thread(loops[i], "event-loop-" + i);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Method for listening for incoming connections, never returns normally
+	 * @throws IOException
+	 */
+	public void listen() throws IOException {
+		ServerSocketChannel ss = ServerSocketChannel.open();
+		ss.bind(new InetSocketAddress(port));
+		System.out.println("Server listening on port: " + port + " (nio mode, " + loops.length + " event loops)");
+
+		int next = 0;
+		while(true) {
+			SocketChannel channel = ss.accept();
+			if(!admit(channel)) {
+				continue;
+			}
+			try {
+				channel.configureBlocking(false);
+			} catch(IOException e) {
+				// only this connection is lost
+				System.out.println("Failed to set up connection, err: " + e.getMessage());
+				closeRejected(channel);
+				connections.release();
+				continue;
+			}
+			loops[next].register(channel);
+			next = (next + 1) % loops.length;
+		}
+	}
+
+	/**
+	 * Method for taking a connection permit for a new connection, waits while all
+	 * are taken and closes the connection if none becomes available
+	 * @param channel, the accepted connection
+	 * @return true if the connection was admitted, false if it was rejected
+	 */
+	private boolean admit(SocketChannel channel) {
+		boolean admitted;
+		try {
+			admitted = connections.tryAcquire(ConnectionExecutor.DEFAULT_ADMISSION_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			admitted = false;
+		}
+
+		if(!admitted) {
+			System.out.println("Server busy, rejecting client at " + channel.socket().getInetAddress().getHostAddress() +
+					":" + channel.socket().getPort());
+			closeRejected(channel);
+		}
+		return admitted;
+	}
+
+	/**
+	 * Method for closing a connection that is not served
+	 * @param channel, the connection
+	 */
+	private static void closeRejected(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch(IOException e) {
+			System.err.println("Failed to close rejected connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	* <h2>EventLoop</h2>
+	* A thread serving a set of connections using a Selector, also running the
+	* tasks handed to it by other threads
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.2
+	* @since   2026-10-18
+	*/
+	private static class EventLoop implements Runnable, Executor {
+		private final Selector selector;
+		private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final Runnable onClose;
+
+		/**
+		 * Constructor
+		 * @param onClose, run once for every connection of the loop when it is closed
+		 * @throws IOException if the selector cannot be opened
+		 */
+		EventLoop(Runnable onClose) throws IOException {
+			this.selector = Selector.open();
+			this.onClose = onClose;
+		}
+
+		/**
+		 * Method for handing a new connection to the event loop, may be called from any thread
+		 * @param channel, a non-blocking channel with an established connection
+		 */
+		void register(SocketChannel channel) {
+			newChannels.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Method for running a task on the event loop thread, may be called from any thread
+		 * @param task, the task to run
+		 */
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while(true) {
+				try {
+					selector.select();
+				} catch(IOException e) {
+					System.err.println("Selector failed: " + e.getMessage());
+					return;
+				}
+
+				// register connections accepted since the last select
+				SocketChannel channel;
+				while((channel = newChannels.poll()) != null) {
+					try {
+						SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+						key.attach(new NioConnection(channel, key, this, onClose));
+					} catch(ClosedChannelException | RuntimeException e) {
+						// client already gone, or its connection could not be set up
+						closeRejected(channel);
+						onClose.run();
+					}
+				}
+
+				// tasks handle their own failures, this only keeps the loop alive
+				Runnable task;
+				while((task = tasks.poll()) != null) {
+					try {
+						task.run();
+					} catch(RuntimeException e) {
+						System.err.println("Event loop task failed: " + e);
+					}
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					NioConnection connection = (NioConnection)key.attachment();
+					try {
+						if(key.isValid() && key.isReadable()) {
+							connection.onReadable();
+						}
+						if(key.isValid() && key.isWritable()) {
+							connection.onWritable();
+						}
+					} catch(IOException | RuntimeException e) {
+						// only this connection is closed
+						connection.fail(e);
+					}
+				}
+			}
+		}
+	}
+}
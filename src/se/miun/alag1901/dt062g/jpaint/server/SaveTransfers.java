@@ -0,0 +1,194 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import se.miun.alag1901.dt062g.jpaint.protocol.Frame;
+import se.miun.alag1901.dt062g.jpaint.protocol.Transfer;
+
+/**
+* <h1>SaveTransfers</h1>
+* Class for receiving the contents of the saves of one session, which from protocol
+* version 2 arrive as a transfer following the save request. At most
+* {@link ClientHandler#MAX_TRANSFERS} saves may wait for their contents at once,
+* and the transfers in progress may hold at most {@link #MAX_SESSION_LENGTH} bytes
+* together, set with the system property jpaint.session.max.
+* <p>
+* A refused or broken save is answered with a single error, the rest of its
+* transfer is dropped without answering every frame of it.
+* Not thread safe, used by the thread reading the frames of the session only.
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+class SaveTransfers {
+	static final long MAX_SESSION_LENGTH = Long.getLong("jpaint.session.max", 512L * 1024 * 1024);
+	// the number of refused saves remembered, older ones get an error again
+	private static final int MAX_REJECTED = 1024;
+
+	private final Map<Integer, Frame> pendingSaves = new HashMap<Integer, Frame>();
+	private final Map<Integer, Transfer> transfers = new HashMap<Integer, Transfer>();
+	// insertion ordered, so the oldest refused save is forgotten first
+	private final Set<Integer> rejected = new LinkedHashSet<Integer>();
+	private long buffered = 0;
+
+	/**
+	* <h2>Save</h2>
+	* Class for a save request together with its received contents.
+	*
+	* @author  Albin Ågren (alag1901)
+	* @version 1.0
+	* @since   2026-10-18
+	*/
+	static class Save {
+		final Frame request;
+		final byte[] contents;
+
+		/**
+		 * Constructor
+		 * @param request, the save request frame
+		 * @param contents, the received contents
+		 */
+		private Save(Frame request, byte[] contents) {
+			this.request = request;
+			this.contents = contents;
+		}
+	}
+
+	/**
+	 * Method for checking if a frame belongs to a save or its transfer
+	 * @param frame, the frame
+	 * @return true if the frame is to be passed to receive
+	 */
+	static boolean isPart(Frame frame) {
+		switch(frame.getType()) {
+			case Frame.SAVE:
+			case Frame.BEGIN:
+			case Frame.CHUNK:
+			case Frame.END: {
+				return true;
+			}
+			default: {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Method for receiving a frame of a save
+	 * @param frame, a frame for which isPart is true
+	 * @return the save once its transfer is complete, otherwise null
+	 * @throws IOException if the save is refused or its transfer is broken, the
+	 * message is to be sent to the client as the only error of the save
+	 */
+	Save receive(Frame frame) throws IOException {
+		int id = frame.getRequestId();
+		try {
+			switch(frame.getType()) {
+				case Frame.SAVE: {
+					// a new request, even if an earlier one with the same id was refused
+					rejected.remove(id);
+					if(pendingSaves.size() >= ClientHandler.MAX_TRANSFERS) {
+						throw new IOException("Too many saves in progress");
+					}
+					pendingSaves.put(id, frame);
+					return null;
+				}
+				case Frame.BEGIN: {
+					if(rejected.contains(id)) {
+						return null;
+					}
+					if(transfers.size() >= ClientHandler.MAX_TRANSFERS) {
+						throw new IOException("Too many transfers in progress");
+					}
+					// the limit is checked before the buffer is allocated
+					long limit = Math.min(ClientHandler.MAX_SAVE_LENGTH, MAX_SESSION_LENGTH - buffered);
+					Transfer transfer = Transfer.begin(frame, limit);
+					transfers.put(id, transfer);
+					buffered += transfer.getLength();
+					return null;
+				}
+				case Frame.CHUNK: {
+					if(rejected.contains(id)) {
+						return null;
+					}
+					getTransfer(id).append(frame);
+					return null;
+				}
+				default: {
+					if(rejected.remove(id)) {
+						// the end of a refused transfer
+						return null;
+					}
+					Transfer transfer = getTransfer(id);
+					Frame request = pendingSaves.get(id);
+					if(request == null) {
+						throw new IOException("Transfer without save request");
+					}
+					byte[] contents = transfer.finish(frame);
+					remove(id);
+					return new Save(request, contents);
+				}
+			}
+		} catch(IOException e) {
+			// drop the broken save, the frames still to come for it are ignored
+			remove(id);
+			if(frame.getType() != Frame.END) {
+				reject(id);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Method for getting the number of transfers in progress
+	 * @return the number of transfers
+	 */
+	int getTransferCount() {
+		return transfers.size();
+	}
+
+	/**
+	 * Method for getting a transfer in progress
+	 * @param id, the request id of the transfer
+	 * @return the transfer
+	 * @throws IOException if no transfer with the id has been started
+	 */
+	private Transfer getTransfer(int id) throws IOException {
+		Transfer transfer = transfers.get(id);
+		if(transfer == null) {
+			throw new IOException("No transfer started for request " + id);
+		}
+		return transfer;
+	}
+
+	/**
+	 * Method for forgetting a save and its transfer
+	 * @param id, the request id of the save
+	 */
+	private void remove(int id) {
+		pendingSaves.remove(id);
+		Transfer transfer = transfers.remove(id);
+		if(transfer != null) {
+			buffered -= transfer.getLength();
+		}
+	}
+
+	/**
+	 * Method for remembering a refused save, so the rest of its transfer is dropped
+	 * @param id, the request id of the save
+	 */
+	private void reject(int id) {
+		rejected.add(id);
+		if(rejected.size() > MAX_REJECTED) {
+			Iterator<Integer> oldest = rejected.iterator();
+			oldest.next();
+			oldest.remove();
+		}
+	}
+}
@@ -1,17 +1,26 @@
 package se.miun.alag1901.dt062g.jpaint.server;
 
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 /**
 * <h1>Server</h1>
-* Class for listening to client requests on a specified port
+* Class for listening to client requests on a specified port.
+* Usage: Server [port] [thread|pool|virtual|nio] [workers]
+* In nio mode the number of workers is the number of event loops of a NioServer.
 *
 * @author  Albin Ågren (alag1901)
-* @version 1.0
+* @version 1.4
 * @since   2020-12-30
 */
 public class Server {
 	private static int port = 10000;
+	private static String mode = ConnectionExecutor.MODE_POOL;
+	private static int workers = ConnectionExecutor.DEFAULT_WORKERS;
+	private static boolean workerArgument = false;
+	
+	public static final String MODE_NIO = "nio";
 
 	public static void main(String[] args) {
 		// use other port if provided as argument at program start
@@ -23,27 +32,50 @@ public class Server {
 			}
 		}
 
+		// execution mode and number of workers are optional as well
+		if(args.length > 1) {
+			mode = args[1];
+		}
+		if(args.length > 2) {
+			try {
+				workers = Integer.parseInt(args[2]);
+				workerArgument = true;
+			} catch(NumberFormatException e) {
+				System.out.println("Invalid workers argument, using default (" + workers + ")");
+			}
+		}
+
 		try {
 			listen();
 		} catch(Exception e) {
 			System.out.println("Error in server: " + e.getMessage());
 			e.printStackTrace();
 		}
-		
+
 	}
-	
+
 	/**
 	 * Method for listening for incoming connections
 	 * @throws Exception
 	 */
 	private static void listen() throws Exception {
-		ServerSocket ss = new ServerSocket(port);
-		System.out.println("Server listening on port: " + port);
+		if(mode.equals(MODE_NIO)) {
+			new NioServer(port, workerArgument ? workers : NioServer.DEFAULT_EVENT_LOOPS).listen();
+			return;
+		}
 		
-		// start a new ClientHandler thread on client connections
+		// without a worker argument every mode uses its own default
+		ConnectionExecutor executor = ConnectionExecutor.create(mode, workerArgument ? workers : 0);
+
+		// accept through a channel so client sockets have channels for zero-copy transfers
+		ServerSocketChannel ss = ServerSocketChannel.open();
+		ss.bind(new InetSocketAddress(port));
+		System.out.println("Server listening on port: " + port + " (" + executor.getMode() + " mode)");
+
+		// hand every client connection over to the executor
 		while(true) {
-			Socket socket = ss.accept();
-			new ClientHandler(socket).start();
+			SocketChannel channel = ss.accept();
+			executor.execute(channel.socket());
 		}
 	}
 }
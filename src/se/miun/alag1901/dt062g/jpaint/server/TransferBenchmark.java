@@ -0,0 +1,130 @@
+package se.miun.alag1901.dt062g.jpaint.server;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+* <h1>TransferBenchmark</h1>
+* Class for comparing the stream copy and the zero-copy transferTo path used by
+* ClientHandler when sending files. Files of increasing size are sent over a
+* loopback connection and the throughput and CPU time of the sending thread are
+* printed for both paths.
+* Usage: TransferBenchmark [max size in MB] [repetitions]
+*
+* @author  Albin Ågren (alag1901)
+* @version 1.0
+* @since   2026-10-18
+*/
+public class TransferBenchmark {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		long maxSize = (args.length > 0 ? Long.parseLong(args[0]) : 500) * 1024 * 1024;
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("localhost", 0));
+
+		System.out.printf("%12s %10s %12s %14s%n", "size", "method", "MB/s", "CPU ms/transfer");
+
+		for(long size = 10 * 1024; size <= maxSize; size *= 10) {
+			Path file = createFile(size);
+			try {
+				for(String method : new String[] { "stream", "transferTo" }) {
+					// first round warms up
+					measure(server, file, method, 1);
+					double[] result = measure(server, file, method, repetitions);
+					System.out.printf("%12d %10s %12.1f %14.3f%n", size, method, result[0], result[1]);
+				}
+			} finally {
+				Files.delete(file);
+			}
+
+			// always include the largest size
+			if(size < maxSize && size * 10 > maxSize) {
+				size = maxSize / 10;
+			}
+		}
+		server.close();
+	}
+
+	/**
+	 * Method for creating a temporary file of a given size
+	 * @param size, the size in bytes
+	 * @return the path to the file
+	 * @throws IOException
+	 */
+	private static Path createFile(long size) throws IOException {
+		Path file = Files.createTempFile("jpaint-benchmark", ".xml");
+		ByteBuffer block = ByteBuffer.allocate(1024 * 1024);
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			for(long written = 0; written < size; ) {
+				block.clear().limit((int)Math.min(block.capacity(), size - written));
+				written += channel.write(block);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Method for sending a file a number of times with one of the methods
+	 * @param server, a listening channel to connect to
+	 * @param file, the file to send
+	 * @param method, stream or transferTo
+	 * @param repetitions, the number of transfers
+	 * @return the throughput in MB/s and the CPU time in ms per transfer
+	 * @throws Exception
+	 */
+	private static double[] measure(ServerSocketChannel server, Path file, String method, int repetitions)
+			throws Exception {
+		long totalTime = 0, totalCpu = 0;
+
+		for(int i = 0; i < repetitions; ++i) {
+			SocketChannel sender = SocketChannel.open(server.getLocalAddress());
+			SocketChannel receiver = server.accept();
+
+			// drain the connection in another thread, as a client would
+			Thread sink = new Thread(() -> {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+				try {
+					while(receiver.read(buffer) >= 0) {
+						buffer.clear();
+					}
+					receiver.close();
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			});
+			sink.start();
+
+			long cpu = THREADS.getCurrentThreadCpuTime();
+			long start = System.nanoTime();
+			if(method.equals("stream")) {
+				try(InputStream in = Files.newInputStream(file)) {
+					ClientHandler.copyStream(in, new DataOutputStream(sender.socket().getOutputStream()));
+				}
+			} else {
+				try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					ClientHandler.transferFile(channel, sender);
+				}
+			}
+			sender.close();
+			sink.join();
+
+			totalTime += System.nanoTime() - start;
+			totalCpu += THREADS.getCurrentThreadCpuTime() - cpu;
+		}
+
+		double megabytes = Files.size(file) * (double)repetitions / (1024 * 1024);
+		return new double[] { megabytes / (totalTime / 1e9), totalCpu / 1e6 / repetitions };
+	}
+}